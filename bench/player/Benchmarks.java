@@ -0,0 +1,348 @@
+/* Benchmarks.java */
+
+package player;
+
+import graph.Edge;
+import graph.Graph;
+import graph.Vertex;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *  Microbenchmarks for the player's and the graph package's hot paths, on
+ *  a fixed, seeded set of positions from three phases of the game: early
+ *  ADD (4 plies in), a full board still in the ADD phase (18 plies in) and
+ *  STEP (24 plies in and later).
+ *
+ *  This source tree lives beside the player sources, in the same package so
+ *  it can reach the search's internals, and is compiled with them on the
+ *  class path:
+ *
+ *      javac -d classes graph/*.java list/*.java player/*.java
+ *      javac -cp classes -d classes bench/player/Benchmarks.java
+ *      java -cp classes player.Benchmarks [-json file] [-quick] [filter]
+ *
+ *  Each benchmark is warmed up, then timed over several iterations, and
+ *  reported as the mean time per operation with a 99.9% confidence error,
+ *  in the shape of JMH's JSON output so the results can be tracked with
+ *  the same tools.  Only benchmarks whose name contains the filter run.
+ */
+public class Benchmarks {
+    static final int POSITIONS = 16;
+    static final int[] EARLY_ADD = {4};
+    static final int[] FULL_ADD = {18};
+    static final int[] STEP = {24, 27, 30, 33};
+
+    // Results are folded in here so the JIT cannot drop the work.
+    static volatile long sink;
+
+    /**
+     *  One benchmark: an operation on each position of a set, timed over
+     *  whole passes through the set.  setUp() runs untimed before every
+     *  pass, for operations that use up their input.
+     */
+    abstract static class Benchmark {
+        final String name;
+        final String phase;
+        final Position[] positions;
+        final int[] colors;
+
+        Benchmark(String name, String phase, Position[] positions, int[] colors) {
+            this.name = name;
+            this.phase = phase;
+            this.positions = positions;
+            this.colors = colors;
+        }
+
+        // Operations per pass.
+        int size() {
+            return positions.length;
+        }
+
+        void setUp() {
+        }
+
+        abstract long run(int i);
+    }
+
+    // Returns POSITIONS seeded random positions, spread over the given ply
+    // counts, and fills colors with the side to move in each.
+    static Position[] positions(int[] plies, int[] colors) {
+        Position[] positions = new Position[POSITIONS];
+        int n = 0;
+        for (long seed = 1; n < POSITIONS; seed++) {
+            int p = plies[n % plies.length];
+            Position position = NodeCounter.randomPosition(seed, p);
+            if (position == null) continue;
+            colors[n] = p % 2 == 0 ? MachinePlayer.WHITE : MachinePlayer.BLACK;
+            positions[n++] = position;
+        }
+        return positions;
+    }
+
+    static MachinePlayer player(Position position, int color, int depth) {
+        MachinePlayer player = new MachinePlayer(color, depth, position);
+        player.setOpeningBook(null);
+        return player;
+    }
+
+    static List<Benchmark> benchmarks() {
+        List<Benchmark> all = new ArrayList<Benchmark>();
+        String[] phases = {"earlyAdd", "fullAdd", "step"};
+        int[][] plies = {EARLY_ADD, FULL_ADD, STEP};
+        for (int k = 0; k < phases.length; k++) {
+            final int[] colors = new int[POSITIONS];
+            final Position[] positions = positions(plies[k], colors);
+            final MachinePlayer[] players = new MachinePlayer[POSITIONS];
+            final Move[][] candidates = new Move[POSITIONS][];
+            for (int i = 0; i < POSITIONS; i++) {
+                players[i] = player(positions[i], colors[i], 1);
+                // Time the network detector itself, not repeated cache hits.
+                players[i].setEvaluationCache(0);
+                candidates[i] = candidates(positions[i], colors[i]);
+            }
+            String phase = phases[k];
+
+            all.add(new Benchmark("getMoves", phase, positions, colors) {
+                long run(int i) {
+                    return players[i].getMoves(colors[i]).length;
+                }
+            });
+            all.add(new Benchmark("isMoveValid", phase, positions, colors) {
+                int size() {
+                    return POSITIONS * candidates[0].length;
+                }
+                long run(int i) {
+                    int p = i % POSITIONS;
+                    return players[p].isMoveValid(candidates[p][i / POSITIONS], colors[p]) ? 1 : 0;
+                }
+            });
+            all.add(new Benchmark("generateGraph", phase, positions, colors) {
+                long run(int i) {
+                    return (long) players[i].generateGraph(colors[i]).getEdgeCount();
+                }
+            });
+            all.add(new Benchmark("Graph.insertEdge", phase, positions, colors) {
+                // Every edge of every position's graph, in insertion order,
+                // with the graph each goes into.
+                final List<Edge> edges = new ArrayList<Edge>();
+                final List<Graph> graphs = new ArrayList<Graph>();
+                int size() {
+                    return edges.size();
+                }
+                void setUp() {
+                    edges.clear();
+                    graphs.clear();
+                    for (int i = 0; i < POSITIONS; i++) {
+                        Graph graph = new Graph();
+                        for (Edge e : edges(positions[i], colors[i])) {
+                            edges.add(e);
+                            graphs.add(graph);
+                        }
+                    }
+                }
+                long run(int i) {
+                    graphs.get(i).insertEdge(edges.get(i));
+                    return 0;
+                }
+            });
+            all.add(new Benchmark("isWinningGrid", phase, positions, colors) {
+                long run(int i) {
+                    return players[i].isWinningGrid(colors[i]) ? 1 : 0;
+                }
+            });
+            all.add(new Benchmark("evaluateBoard", phase, positions, colors) {
+                long run(int i) {
+                    return (long) players[i].evaluateBoard();
+                }
+            });
+            all.add(new Benchmark("makeUndo", phase, positions, colors) {
+                // Every legal move of every position, made and taken back.
+                final int[][] moves = new int[POSITIONS][];
+                {
+                    for (int i = 0; i < POSITIONS; i++) {
+                        int[] buffer = new int[Position.MAX_MOVES];
+                        moves[i] = Arrays.copyOf(buffer, positions[i].generate(colors[i], buffer));
+                    }
+                }
+                int size() {
+                    return POSITIONS * moves[0].length;
+                }
+                long run(int i) {
+                    int p = i % POSITIONS;
+                    int[] mine = moves[p];
+                    int move = mine[(i / POSITIONS) % mine.length];
+                    positions[p].make(move, colors[p]);
+                    positions[p].undo(move, colors[p]);
+                    return move;
+                }
+            });
+            for (int d = 1; d <= 4; d++) {
+                final int depth = d;
+                all.add(new Benchmark("chooseMove.depth" + d, phase, positions, colors) {
+                    MachinePlayer[] fresh = new MachinePlayer[POSITIONS];
+                    void setUp() {
+                        for (int i = 0; i < POSITIONS; i++) {
+                            fresh[i] = player(positions[i], colors[i], depth);
+                        }
+                    }
+                    long run(int i) {
+                        Move m = fresh[i].chooseMove();
+                        return m == null ? 0 : m.x1;
+                    }
+                });
+            }
+        }
+        return all;
+    }
+
+    // Every ADD or STEP move of mColor to every square, legal or not.
+    static Move[] candidates(Position position, int mColor) {
+        List<Move> moves = new ArrayList<Move>();
+        for (int to = 0; to < Position.CELLS; to++) {
+            if (position.count(mColor) < Position.CHIPS) {
+                moves.add(new Move(Position.x(to), Position.y(to)));
+            } else {
+                int from = position.chip(mColor, to % Position.CHIPS);
+                moves.add(new Move(Position.x(to), Position.y(to),
+                                   Position.x(from), Position.y(from)));
+            }
+        }
+        return moves.toArray(new Move[0]);
+    }
+
+    // The connection graph's edges for mColor's chips, on new vertices, in
+    // the order generateGraph() would insert them.
+    static Edge[] edges(Position position, int mColor) {
+        Vertex[] vertices = new Vertex[Position.CELLS];
+        int count = position.count(mColor);
+        for (int i = 0; i < count; i++) {
+            int chip = position.chip(mColor, i);
+            vertices[chip] = new Vertex(Position.x(chip), Position.y(chip));
+        }
+        List<Edge> edges = new ArrayList<Edge>();
+        for (int i = 0; i < count; i++) {
+            int chip = position.chip(mColor, i);
+            for (int dir = 0; dir < 4; dir++) {
+                int destination = position.connection(chip, dir, mColor);
+                if (destination >= 0) {
+                    edges.add(new Edge(dir, vertices[chip], vertices[destination]));
+                }
+            }
+        }
+        return edges.toArray(new Edge[0]);
+    }
+
+    // Runs passes through the benchmark and returns the time per operation
+    // in nanoseconds.
+    static double measure(Benchmark b, int passes) {
+        long total = 0;
+        long ops = 0;
+        long acc = 0;
+        for (int p = 0; p < passes; p++) {
+            b.setUp();
+            int size = b.size();
+            long start = System.nanoTime();
+            for (int i = 0; i < size; i++) {
+                acc += b.run(i);
+            }
+            total += System.nanoTime() - start;
+            ops += size;
+        }
+        sink += acc;
+        return (double) total / ops;
+    }
+
+    // Returns how many passes make an iteration of about "millis" ms.
+    static int calibrate(Benchmark b, long millis) {
+        int passes = 1;
+        while (true) {
+            long start = System.nanoTime();
+            measure(b, passes);
+            long elapsed = System.nanoTime() - start;
+            if (elapsed >= millis * 1000000L || passes >= 1 << 20) {
+                return passes;
+            }
+            passes *= 2;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String json = null;
+        String filter = "";
+        int warmups = 3;
+        int iterations = 5;
+        long millis = 200;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-json") && i + 1 < args.length) {
+                json = args[++i];
+            } else if (args[i].equals("-quick")) {
+                warmups = 1;
+                iterations = 3;
+                millis = 50;
+            } else {
+                filter = args[i];
+            }
+        }
+        PrintWriter results = json == null ? new PrintWriter(System.out)
+                                           : new PrintWriter(new FileWriter(json));
+        results.println("[");
+        boolean first = true;
+        for (Benchmark b : benchmarks()) {
+            String id = "player.Benchmarks." + b.name;
+            if (!(id + ":" + b.phase).contains(filter)) continue;
+            int passes = calibrate(b, millis);
+            for (int w = 0; w < warmups; w++) {
+                measure(b, passes);
+            }
+            double[] scores = new double[iterations];
+            double mean = 0;
+            for (int i = 0; i < iterations; i++) {
+                scores[i] = measure(b, passes);
+                mean += scores[i] / iterations;
+            }
+            double variance = 0;
+            for (double s : scores) {
+                variance += (s - mean) * (s - mean) / Math.max(1, iterations - 1);
+            }
+            // 99.9% two-sided Student's t quantile, as JMH reports, for the
+            // iteration counts used here.
+            double t = iterations <= 3 ? 31.599 : 8.610;
+            double error = t * Math.sqrt(variance / iterations);
+            System.err.println(String.format("%-28s %-9s %14.1f ns/op +/- %.1f",
+                                             b.name, b.phase, mean, error));
+            if (!first) {
+                results.println(",");
+            }
+            first = false;
+            results.print("  {\"benchmark\": \"" + id + "\", \"mode\": \"avgt\", "
+                          + "\"params\": {\"phase\": \"" + b.phase + "\"}, "
+                          + "\"warmupIterations\": " + warmups + ", "
+                          + "\"measurementIterations\": " + iterations + ", "
+                          + "\"primaryMetric\": {\"score\": " + mean + ", "
+                          + "\"scoreError\": " + error + ", \"scoreUnit\": \"ns/op\", "
+                          + "\"rawData\": [" + join(scores) + "]}}");
+        }
+        results.println();
+        results.println("]");
+        results.flush();
+        if (json != null) {
+            results.close();
+        }
+    }
+
+    private static String join(double[] values) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                s.append(", ");
+            }
+            s.append(values[i]);
+        }
+        return s.toString();
+    }
+}
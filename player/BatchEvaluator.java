@@ -0,0 +1,299 @@
+/* BatchEvaluator.java */
+
+package player;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ *  Evaluates positions in bulk, for offline analysis of logged games.  Each
+ *  position comes in the compact form of PositionCodec and is judged on its
+ *  own.  For each one the evaluator reports:
+ *
+ *  - the static evaluation (MachinePlayer.evaluateBoard)
+ *  - the number of legal moves for the color to move
+ *  - whether each color has a network (MachinePlayer.isWinningGrid)
+ *  - the best move and its score from a search to a fixed depth
+ *
+ *  Positions are spread over a fixed pool of threads.  Each thread keeps one
+ *  MachinePlayer per color and resets it before every position, so a
+ *  result depends only on its position and never on what came before.  At
+ *  most a fixed window of positions is in flight, and results are handed
+ *  back in input order, so memory stays bounded however long the input is.
+ *
+ *  Usage:  java player.BatchEvaluator [depth] [threads] < positions > results
+ *          java player.BatchEvaluator -random count [plies] > positions
+ *
+ *  The first form prints one tab-separated line per position (see Result).
+ *  Depth 0 skips the search.  The second writes count seeded random
+ *  positions, "plies" moves into a game or spread over several phases, for
+ *  trying it out.
+ */
+public class BatchEvaluator {
+    public static final int HASH_ENTRIES = 1 << 14;
+    static final int WINDOW = 64;
+    static final int BUFFER = 1 << 16;
+
+    /**
+     *  What the evaluator found for one position.  Scores are from the side
+     *  of the color to move: above 0 is good for it.
+     */
+    public static class Result {
+        public final long index;
+        public final int color;
+        public final double evaluation;
+        public final int moves;
+        public final boolean blackNetwork;
+        public final boolean whiteNetwork;
+        public final Move best;        // null if not searched
+        public final double score;
+        public final long nodes;
+
+        Result(long index, int color, double evaluation, int moves, boolean blackNetwork,
+               boolean whiteNetwork, Move best, double score, long nodes) {
+            this.index = index;
+            this.color = color;
+            this.evaluation = evaluation;
+            this.moves = moves;
+            this.blackNetwork = blackNetwork;
+            this.whiteNetwork = whiteNetwork;
+            this.best = best;
+            this.score = score;
+            this.nodes = nodes;
+        }
+
+        // Index, color to move, evaluation, legal moves, black network,
+        // white network, best move, score and nodes, separated by tabs.
+        public String toString() {
+            return index + "\t" + color + "\t" + evaluation + "\t" + moves
+                + "\t" + (blackNetwork ? 1 : 0) + "\t" + (whiteNetwork ? 1 : 0)
+                + "\t" + (best == null ? "-" : best.toString()) + "\t" + score + "\t" + nodes;
+        }
+    }
+
+    /**
+     *  The players and scratch space of one pool thread.
+     */
+    private class Worker {
+        final MachinePlayer[] players = new MachinePlayer[2];
+        final int[] moves = new int[Position.MAX_MOVES];
+
+        Worker() {
+            for (int c = 0; c < 2; c++) {
+                players[c] = new MachinePlayer(c, depth);
+                players[c].setOpeningBook(null);
+                players[c].setHashSize(HASH_ENTRIES);
+            }
+        }
+
+        Result evaluate(long index, Position position, int mColor) {
+            MachinePlayer player = players[mColor];
+            player.reset(position);
+            boolean black = player.isWinningGrid(MachinePlayer.BLACK);
+            boolean white = player.isWinningGrid(MachinePlayer.WHITE);
+            double evaluation = player.evaluateBoard();
+            int count = position.generate(mColor, moves);
+            Move best = null;
+            double score = 0;
+            long nodes = 0;
+            if (depth > 0 && count > 0 && !black && !white) {
+                best = player.chooseMove();
+                score = player.getScore();
+                nodes = player.getNodeCount();
+            }
+            return new Result(index, mColor, evaluation, count, black, white, best, score, nodes);
+        }
+    }
+
+    private final int depth;
+    private final int threads;
+    private ThreadLocal<Worker> workers;
+    private ExecutorService pool;
+    private ArrayDeque<Future<Result>> pending;
+    private Consumer<Result> out;
+
+    // Creates an evaluator that searches to the given depth (0 for no
+    // search) on the given number of threads.
+    public BatchEvaluator(int depth, int threads) {
+        this.depth = Math.max(0, depth);
+        this.threads = Math.max(1, threads);
+    }
+
+    // Evaluates every position read from "in" and hands the results to
+    // "out", in input order, on the calling thread.  Returns how many there
+    // were.  Throws IOException if a record is malformed or cut short.
+    public synchronized long evaluate(ReadableByteChannel in, Consumer<Result> out)
+        throws IOException {
+        start(out);
+        long index = 0;
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()
+                       && buffer.remaining()
+                          >= PositionCodec.length(buffer.get(buffer.position()))) {
+                    try {
+                        submit(index, buffer);
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("position " + index + ": " + e.getMessage());
+                    }
+                    index++;
+                }
+                buffer.compact();
+            }
+            if (buffer.position() > 0) {
+                throw new IOException("position " + index + " is cut short");
+            }
+            finish();
+        } finally {
+            pool.shutdownNow();
+        }
+        return index;
+    }
+
+    // Evaluates every position of "positions", each in the form of
+    // PositionCodec, and hands the results to "out", in input order, on the
+    // calling thread.  Returns how many there were.  Throws
+    // IllegalArgumentException if a position is malformed.
+    public synchronized long evaluate(Iterator<byte[]> positions, Consumer<Result> out) {
+        start(out);
+        long index = 0;
+        try {
+            while (positions.hasNext()) {
+                byte[] record = positions.next();
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                if (record.length == 0 || record.length != PositionCodec.length(record[0])) {
+                    throw new IllegalArgumentException("position " + index + " has "
+                                                       + record.length + " bytes");
+                }
+                try {
+                    submit(index, buffer);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("position " + index + ": " + e.getMessage());
+                }
+                index++;
+            }
+            finish();
+        } finally {
+            pool.shutdownNow();
+        }
+        return index;
+    }
+
+    private void start(Consumer<Result> out) {
+        this.out = out;
+        workers = new ThreadLocal<Worker>() {
+            protected Worker initialValue() {
+                return new Worker();
+            }
+        };
+        pool = Executors.newFixedThreadPool(threads);
+        pending = new ArrayDeque<Future<Result>>();
+    }
+
+    // Decodes the record at buffer's position and queues it, first waiting
+    // for the oldest result if the window is full.
+    private void submit(final long index, ByteBuffer buffer) {
+        final Position position = new Position();
+        final int mColor = PositionCodec.read(buffer, position);
+        if (pending.size() >= WINDOW * threads) {
+            deliver();
+        }
+        pending.add(pool.submit(new Callable<Result>() {
+            public Result call() {
+                return workers.get().evaluate(index, position, mColor);
+            }
+        }));
+    }
+
+    private void finish() {
+        while (!pending.isEmpty()) {
+            deliver();
+        }
+    }
+
+    // Waits for the oldest result and hands it on.
+    private void deliver() {
+        Future<Result> next = pending.poll();
+        try {
+            out.accept(next.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    // Writes count seeded random positions to out, "plies" plies into a game,
+    // or spread over NodeCounter's plies if plies is negative.
+    static void writeRandom(WritableByteChannel out, int count, int plies) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+        int n = 0;
+        for (long seed = 1; n < count; seed++) {
+            int p = plies >= 0 ? plies : NodeCounter.PLIES[(int) (seed % NodeCounter.PLIES.length)];
+            Position position = NodeCounter.randomPosition(seed, p);
+            if (position == null) continue;
+            if (buffer.remaining() < PositionCodec.MAX_BYTES) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+            PositionCodec.write(position, p % 2 == 0 ? MachinePlayer.WHITE : MachinePlayer.BLACK,
+                                buffer);
+            n++;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("-random")) {
+            int count = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+            int plies = args.length > 2 ? Integer.parseInt(args[2]) : -1;
+            WritableByteChannel out = Channels.newChannel(System.out);
+            writeRandom(out, count, plies);
+            System.out.flush();
+            return;
+        }
+        int depth = 2;
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 0) {
+            depth = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            threads = Integer.parseInt(args[1]);
+        }
+        final PrintWriter results = new PrintWriter(new BufferedOutputStream(System.out, BUFFER));
+        results.println("# index\tcolor\tevaluation\tmoves\tblack\twhite\tbest\tscore\tnodes");
+        long started = System.nanoTime();
+        long count = new BatchEvaluator(depth, threads).evaluate(Channels.newChannel(System.in),
+            new Consumer<Result>() {
+                public void accept(Result r) {
+                    results.println(r);
+                }
+            });
+        results.flush();
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.err.println(String.format("%d positions in %.1f s on %d threads: %.0f positions/s",
+                                         count, seconds, threads, count / seconds));
+    }
+}
@@ -0,0 +1,363 @@
+/* BitboardCheck.java */
+
+package player;
+
+import java.util.Random;
+import graph.*;
+import list.DListNode;
+import list.InvalidNodeException;
+
+/**
+ *  Checks MachinePlayer's bitboard position against the board it replaced:
+ *  an int[][] board with each color's chips in an array, whose connections
+ *  were found by walking the board square by square and whose networks
+ *  were found by a depth-first search of a graph.  GraphBoard below keeps
+ *  that code.
+ *
+ *  Both play the same seeded random games.  After every move they must
+ *  agree on getMoves (the same moves in the same order) and on
+ *  evaluateBoard and isWinningGrid for both colors, and on isMoveValid for
+ *  a sample of moves, legal and illegal.  From a random ply on, moves that
+ *  complete a network are preferred, so that games end in a network often
+ *  enough to test one, in the ADD phase or the STEP phase.
+ *  Prints each disagreement and exits with status 1 if there was any.
+ *
+ *  Usage:  java player.BitboardCheck [games]
+ */
+public class BitboardCheck {
+    static final int SIDE = MachinePlayer.SIDE;
+    static final int BLACK = MachinePlayer.BLACK;
+    static final int WHITE = MachinePlayer.WHITE;
+    static final int EMPTY = MachinePlayer.EMPTY;
+    static final int SAMPLES = 40;
+
+    private static int failures;
+    private static int networks;
+
+    /**
+     *  The board as MachinePlayer kept it before bitboards.
+     */
+    static class GraphBoard {
+        final int[][] board = new int[SIDE][SIDE];
+        final int[][][] chips = new int[2][10][2];
+        final int[] count = new int[2];
+
+        GraphBoard() {
+            for (int i = 0; i < SIDE; i++) {
+                for (int j = 0; j < SIDE; j++) {
+                    board[i][j] = EMPTY;
+                }
+            }
+        }
+
+        private int countNeighbours(int x, int y, int mColor, boolean initial) {
+            int c = 0;
+            for (int i = Math.max(0, x - 1); i <= Math.min(SIDE - 1, x + 1); i++) {
+                for (int j = Math.max(0, y - 1); j <= Math.min(SIDE - 1, y + 1); j++) {
+                    if ((i != x || j != y) && board[i][j] == mColor) {
+                        if (initial) {
+                            int c1 = countNeighbours(i, j, mColor, false);
+                            if (c1 > 1) {
+                                return c1;
+                            }
+                        }
+                        c++;
+                    }
+                }
+            }
+            return c;
+        }
+
+        boolean isMoveValid(Move m, int mColor) {
+            if (board[m.x1][m.y1] != EMPTY) return false;
+            if ((m.x1 == 0 || m.x1 == SIDE - 1) && (m.y1 == 0 || m.y1 == SIDE - 1)) {
+                return false;
+            }
+            if (mColor == BLACK && (m.x1 == 0 || m.x1 == SIDE - 1)) return false;
+            if (mColor == WHITE && (m.y1 == 0 || m.y1 == SIDE - 1)) return false;
+            if (m.moveKind == Move.ADD) {
+                if (count[mColor] >= 10) return false;
+            } else {
+                if (count[mColor] < 10) return false;
+                if (board[m.x2][m.y2] != mColor) return false;
+                if (m.x1 == m.x2 && m.y1 == m.y2) return false;
+                board[m.x2][m.y2] = EMPTY;
+            }
+            board[m.x1][m.y1] = mColor;
+            boolean valid = countNeighbours(m.x1, m.y1, mColor, true) <= 1;
+            if (m.moveKind == Move.STEP) {
+                board[m.x2][m.y2] = mColor;
+            }
+            board[m.x1][m.y1] = EMPTY;
+            return valid;
+        }
+
+        // A STEP moves its chip within the chip array, so the chips keep
+        // their order.
+        void makeMove(Move m, int mColor) {
+            int pos = count[mColor];
+            if (m.moveKind == Move.STEP) {
+                for (int i = 0; i < 10; i++) {
+                    if (m.x2 == chips[mColor][i][0] && m.y2 == chips[mColor][i][1]) {
+                        pos = i;
+                    }
+                }
+                board[m.x2][m.y2] = EMPTY;
+            } else {
+                count[mColor]++;
+            }
+            chips[mColor][pos][0] = m.x1;
+            chips[mColor][pos][1] = m.y1;
+            board[m.x1][m.y1] = mColor;
+        }
+
+        // The 48 squares mColor may use, in the order moves were generated.
+        private Move square(int mColor, int cell, int chip) {
+            int x;
+            int y;
+            if (mColor == WHITE) {
+                x = cell % SIDE;
+                y = cell / SIDE + 1;
+            } else {
+                x = cell % 6 + 1;
+                y = cell / 6;
+            }
+            if (chip < 0) {
+                return new Move(x, y);
+            }
+            return new Move(x, y, chips[mColor][chip][0], chips[mColor][chip][1]);
+        }
+
+        Move[] getMoves(int mColor) {
+            Move[] all = new Move[10 * 48];
+            int n = 0;
+            if (count[mColor] < 10) {
+                for (int cell = 0; cell < 48; cell++) {
+                    Move m = square(mColor, cell, -1);
+                    if (isMoveValid(m, mColor)) {
+                        all[n++] = m;
+                    }
+                }
+            } else {
+                for (int chip = 0; chip < 10; chip++) {
+                    for (int cell = 0; cell < 48; cell++) {
+                        Move m = square(mColor, cell, chip);
+                        if (isMoveValid(m, mColor)) {
+                            all[n++] = m;
+                        }
+                    }
+                }
+            }
+            Move[] moves = new Move[n];
+            System.arraycopy(all, 0, moves, 0, n);
+            return moves;
+        }
+
+        // The first chip of mColor seen from (x, y) in direction (dx, dy),
+        // or null if an opponent's chip or the edge of mColor's area comes
+        // first.
+        private int[] look(int x, int y, int dx, int dy, int mColor) {
+            int low = mColor == BLACK ? 1 : 0;
+            int high = mColor == BLACK ? SIDE - 2 : SIDE - 1;
+            int top = mColor == BLACK ? 0 : 1;
+            int bottom = mColor == BLACK ? SIDE - 1 : SIDE - 2;
+            for (int i = x + dx, j = y + dy;
+                 i >= low && i <= high && j >= top && j <= bottom; i += dx, j += dy) {
+                if (board[i][j] == mColor) return new int[] {i, j};
+                if (board[i][j] != EMPTY) return null;
+            }
+            return null;
+        }
+
+        Graph generateGraph(int mColor) {
+            Graph graph = new Graph();
+            for (int i = 0; i < count[mColor]; i++) {
+                graph.insertVertex(new Vertex(chips[mColor][i][0], chips[mColor][i][1]));
+            }
+            int[][] dirs = {{0, -1}, {1, -1}, {1, 0}, {1, 1}};
+            for (int i = 0; i < count[mColor]; i++) {
+                int x = chips[mColor][i][0];
+                int y = chips[mColor][i][1];
+                for (int d = 0; d < dirs.length; d++) {
+                    int[] destination = look(x, y, dirs[d][0], dirs[d][1], mColor);
+                    if (destination != null) {
+                        graph.insertEdge(new Edge(d, graph.getVertex(x, y),
+                                                  graph.getVertex(destination[0],
+                                                                  destination[1])));
+                    }
+                }
+            }
+            return graph;
+        }
+
+        private boolean visitVertex(Vertex v, int depth, int direction, int mColor) {
+            if (v.visited()) return false;
+            if ((mColor == BLACK && v.y() == 7) || (mColor == WHITE && v.x() == 7)) {
+                return depth >= 5;
+            }
+            if (depth > 0 && ((mColor == BLACK && v.y() == 0) || (mColor == WHITE && v.x() == 0))) {
+                return false;
+            }
+            v.visit();
+            boolean result = false;
+            try {
+                DListNode node = (DListNode) v.incidentEdges().front();
+                while (!result && node.isValidNode()) {
+                    Edge e = (Edge) node.item();
+                    if (e.direction() != direction) {
+                        result = visitVertex(e.opposite(v), depth + 1, e.direction(), mColor);
+                    }
+                    node = (DListNode) node.next();
+                }
+            } catch (InvalidNodeException e) {
+                System.out.println(e);
+            }
+            v.reset();
+            return result;
+        }
+
+        boolean isWinningGrid(int mColor) {
+            Graph graph = generateGraph(mColor);
+            int n = count[mColor];
+            if (n < 6) return false;
+            int starts = 0;
+            int finishes = 0;
+            for (int i = 0; i < n; i++) {
+                int c = chips[mColor][i][mColor == BLACK ? 1 : 0];
+                if (c == 0) starts++;
+                if (c == 7) finishes++;
+            }
+            if (starts == 0 || finishes == 0 || n - starts - finishes < 4) return false;
+            for (int i = 0; i < n; i++) {
+                if (chips[mColor][i][mColor == BLACK ? 1 : 0] == 0) {
+                    graph.reset();
+                    Vertex v = graph.getVertex(chips[mColor][i][0], chips[mColor][i][1]);
+                    if (visitVertex(v, 0, -1, mColor)) return true;
+                }
+            }
+            return false;
+        }
+
+        double evaluateBoard(int mColor) {
+            return generateGraph(mColor).getEdgeCount()
+                - generateGraph(1 - mColor).getEdgeCount();
+        }
+    }
+
+    private static boolean same(Move a, Move b) {
+        return a.moveKind == b.moveKind && a.x1 == b.x1 && a.y1 == b.y1
+            && (a.moveKind != Move.STEP || (a.x2 == b.x2 && a.y2 == b.y2));
+    }
+
+    private static void fail(long seed, int ply, String what) {
+        failures++;
+        System.out.println("seed " + seed + ", ply " + ply + ": " + what);
+    }
+
+    // Compares the two boards in their present position.
+    private static void compare(long seed, int ply, MachinePlayer player, int color,
+                                GraphBoard old, Random random) {
+        for (int mColor = 0; mColor < 2; mColor++) {
+            Move[] expected = old.getMoves(mColor);
+            Move[] actual = player.getMoves(mColor);
+            boolean same = expected.length == actual.length;
+            for (int i = 0; same && i < expected.length; i++) {
+                same = same(expected[i], actual[i]);
+            }
+            if (!same) {
+                fail(seed, ply, "getMoves(" + mColor + ") gives " + actual.length
+                     + " moves, expected " + expected.length);
+            }
+            if (player.isWinningGrid(mColor) != old.isWinningGrid(mColor)) {
+                fail(seed, ply, "isWinningGrid(" + mColor + ") is "
+                     + player.isWinningGrid(mColor));
+            }
+            for (int i = 0; i < SAMPLES; i++) {
+                int x = random.nextInt(SIDE);
+                int y = random.nextInt(SIDE);
+                Move m;
+                if (random.nextBoolean()) {
+                    m = new Move(x, y);
+                } else if (random.nextBoolean() && old.count[mColor] > 0) {
+                    int[] chip = old.chips[mColor][random.nextInt(old.count[mColor])];
+                    m = new Move(x, y, chip[0], chip[1]);
+                } else {
+                    m = new Move(x, y, random.nextInt(SIDE), random.nextInt(SIDE));
+                }
+                if (player.isMoveValid(m, mColor) != old.isMoveValid(m, mColor)) {
+                    fail(seed, ply, "isMoveValid(" + m + ", " + mColor + ") is "
+                         + player.isMoveValid(m, mColor));
+                }
+            }
+        }
+        if (player.evaluateBoard() != old.evaluateBoard(color)) {
+            fail(seed, ply, "evaluateBoard() is " + player.evaluateBoard()
+                 + ", expected " + old.evaluateBoard(color));
+        }
+    }
+
+    // Plays one random game on both boards and returns its length in plies.
+    static int play(long seed) {
+        Random random = new Random(seed);
+        int color = (int) (seed % 2);
+        MachinePlayer player = new MachinePlayer(color);
+        GraphBoard old = new GraphBoard();
+        int mColor = WHITE;
+        int ply = 0;
+        int finish = random.nextInt(Tournament.MAX_PLIES);
+        while (ply < Tournament.MAX_PLIES) {
+            compare(seed, ply, player, color, old, random);
+            if (old.isWinningGrid(BLACK) || old.isWinningGrid(WHITE)) {
+                networks++;
+                break;
+            }
+            Move[] moves = old.getMoves(mColor);
+            if (moves.length == 0) break;
+            Move m = moves[random.nextInt(moves.length)];
+            for (int i = 0; ply >= finish && i < moves.length; i++) {
+                Move n = moves[i];
+                old.makeMove(n, mColor);
+                boolean network = old.isWinningGrid(mColor);
+                undo(old, n, mColor);
+                if (network && random.nextBoolean()) {
+                    m = n;
+                    break;
+                }
+            }
+            boolean accepted = mColor == color ? player.forceMove(m) : player.opponentMove(m);
+            if (!accepted) {
+                fail(seed, ply, m + " was refused");
+                break;
+            }
+            old.makeMove(m, mColor);
+            mColor = 1 - mColor;
+            ply++;
+        }
+        return ply;
+    }
+
+    private static void undo(GraphBoard old, Move m, int mColor) {
+        if (m.moveKind == Move.STEP) {
+            old.makeMove(new Move(m.x2, m.y2, m.x1, m.y1), mColor);
+        } else {
+            old.count[mColor]--;
+            old.board[m.x1][m.y1] = EMPTY;
+        }
+    }
+
+    public static void main(String[] args) {
+        int games = 1000;
+        if (args.length > 0) {
+            games = Integer.parseInt(args[0]);
+        }
+        long plies = 0;
+        for (long seed = 1; seed <= games; seed++) {
+            plies += play(seed);
+        }
+        System.out.println(games + " games (" + networks + " won), " + plies + " plies, "
+                           + failures + " disagreements");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/* Connections.java */
+
+package player;
+
+import java.util.Arrays;
+
+/**
+ *  The weighted connection graphs of both colors, kept up to date as chips
+ *  are added, stepped and taken back.
+ *
+ *  Every connection runs along one of the board's lines (a column, a row or
+ *  a diagonal), and its weight depends only on the chips on that line, so
+ *  the graphs are stored as one score per color per line.  When a chip
+ *  arrives on or leaves a square, only the four lines through that square
+ *  can gain, lose or reweight connections, and only those are rescored.
+ *
+ *  The weights match graph.Graph.insertEdge() with the chips inserted in the
+ *  order they were added: a connection starts at 1/4 and is halved for each
+ *  neighbouring connection on the same line that was inserted before it.
+ *  Connections lying along a goal line count 1 less.
+ *
+ *  While a mark is open, every score overwritten is first saved on a
+ *  journal, so a move can be taken back by restoring the scores from
+ *  before it (see mark() and rollback()) instead of rescoring its lines.
+ *  With no mark open, as when a game only plays forward, nothing is saved.
+ */
+class Connections {
+    static final int SIDE = Position.SIDE;
+
+    static final double[] WEIGHT = {1.0, 0.5, 0.25, 0.125, 0.0625};
+    // Entries the journal first makes room for: a few moves' worth.
+    static final int JOURNAL = 64;
+
+    private final double[][] lineScores;
+    private final double[] totals;
+    private final int[] occupied;
+
+    // The journal: line numbers (-1 for the totals) and the black and white
+    // scores they had, made on the first save and grown as needed; and the
+    // number of marks not yet rolled back.
+    private int journaled;
+    private int open;
+    private int[] journalLines;
+    private double[] journalBlack;
+    private double[] journalWhite;
+
+    Connections() {
+        lineScores = new double[2][Lines.LINE_CELLS.length];
+        totals = new double[2];
+        occupied = new int[SIDE];
+    }
+
+    Connections(Connections other) {
+        lineScores = new double[2][];
+        lineScores[0] = other.lineScores[0].clone();
+        lineScores[1] = other.lineScores[1].clone();
+        totals = other.totals.clone();
+        occupied = new int[SIDE];
+    }
+
+    void copy(Connections other) {
+        System.arraycopy(other.lineScores[0], 0, lineScores[0], 0, lineScores[0].length);
+        System.arraycopy(other.lineScores[1], 0, lineScores[1], 0, lineScores[1].length);
+        System.arraycopy(other.totals, 0, totals, 0, 2);
+        journaled = 0;
+        open = 0;
+    }
+
+    // Saves the totals and returns a mark to roll the scores back to.
+    int mark() {
+        open++;
+        int mark = journaled;
+        save(-1, totals[Position.BLACK], totals[Position.WHITE]);
+        return mark;
+    }
+
+    // Restores every score to what it was when mark() returned "mark", and
+    // closes that mark, which must be the last one open.
+    void rollback(int mark) {
+        open--;
+        while (journaled > mark) {
+            journaled--;
+            int line = journalLines[journaled];
+            if (line < 0) {
+                totals[Position.BLACK] = journalBlack[journaled];
+                totals[Position.WHITE] = journalWhite[journaled];
+            } else {
+                lineScores[Position.BLACK][line] = journalBlack[journaled];
+                lineScores[Position.WHITE][line] = journalWhite[journaled];
+            }
+        }
+    }
+
+    private void save(int line, double black, double white) {
+        if (open == 0) return;
+        if (journalLines == null) {
+            journalLines = new int[JOURNAL];
+            journalBlack = new double[JOURNAL];
+            journalWhite = new double[JOURNAL];
+        } else if (journaled == journalLines.length) {
+            journalLines = Arrays.copyOf(journalLines, 2 * journaled);
+            journalBlack = Arrays.copyOf(journalBlack, 2 * journaled);
+            journalWhite = Arrays.copyOf(journalWhite, 2 * journaled);
+        }
+        journalLines[journaled] = line;
+        journalBlack[journaled] = black;
+        journalWhite[journaled] = white;
+        journaled++;
+    }
+
+    // The weighted connection count of mColor (Graph.getEdgeCount()).
+    double edgeCount(int mColor) {
+        return totals[mColor];
+    }
+
+    // Rescores the four lines through cell, whose contents just changed.
+    void update(Position position, int cell) {
+        for (int d = 0; d < 4; d++) {
+            rescore(position, Lines.LINE[d][cell]);
+        }
+    }
+
+    private void rescore(Position position, int line) {
+        long black = position.bits[Position.BLACK];
+        long white = position.bits[Position.WHITE];
+        int n = 0;
+        for (int cell : Lines.LINE_CELLS[line]) {
+            if (((black | white) & Position.bit(cell)) != 0) {
+                occupied[n++] = cell;
+            }
+        }
+        double blackScore = 0;
+        double whiteScore = 0;
+        for (int k = 0; k + 1 < n; k++) {
+            int mColor = color(white, occupied[k]);
+            if (color(white, occupied[k + 1]) != mColor) continue;
+            int order = position.index[occupied[k]];
+            int halvings = 2;
+            if (k > 0 && color(white, occupied[k - 1]) == mColor
+                && position.index[occupied[k - 1]] < order) {
+                halvings++;
+            }
+            if (k + 2 < n && color(white, occupied[k + 2]) == mColor
+                && position.index[occupied[k + 1]] < order) {
+                halvings++;
+            }
+            double weight = WEIGHT[halvings];
+            if (Lines.GOAL_LINE[line]) {
+                weight -= 1;
+            }
+            if (mColor == Position.WHITE) {
+                whiteScore += weight;
+            } else {
+                blackScore += weight;
+            }
+        }
+        save(line, lineScores[Position.BLACK][line], lineScores[Position.WHITE][line]);
+        totals[Position.BLACK] += blackScore - lineScores[Position.BLACK][line];
+        totals[Position.WHITE] += whiteScore - lineScores[Position.WHITE][line];
+        lineScores[Position.BLACK][line] = blackScore;
+        lineScores[Position.WHITE][line] = whiteScore;
+    }
+
+    private static int color(long white, int cell) {
+        return (int) (white >>> cell) & 1;
+    }
+}
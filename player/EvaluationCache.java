@@ -0,0 +1,99 @@
+/* EvaluationCache.java */
+
+package player;
+
+/**
+ *  A bounded cache of network checks.
+ *
+ *  Whether a color has a network depends only on its own chips and on the
+ *  opponent's chips that stand between two of them on a line, since no
+ *  other chip can block a connection.  Entries are keyed on exactly those
+ *  two bitboards.  When the opponent moves without landing between two of a
+ *  color's chips, which is the common case, that color's result is reused
+ *  across sibling moves and transpositions alike.  The other half of the
+ *  evaluation, the weighted edge count, needs no cache: Connections keeps
+ *  it up to date as chips move.
+ *
+ *  Networks look the same in every image of the board (see Symmetry), so
+ *  the two bitboards are first mapped to a canonical image: white's are
+ *  transposed into black's frame, and then the mirror image with the
+ *  smallest own bitboard is taken.  One check then answers for up to eight
+ *  positions, of either color, and the colors share one table.
+ *
+ *  The table is two-way set associative with least-recently-used
+ *  replacement: a hit makes its entry the most recent of its set, and a new
+ *  result replaces the other entry.  Keys are stored whole, so a hit is
+ *  never a collision.  A cache must not be shared between threads.
+ */
+class EvaluationCache {
+    private final long[] owns;
+    private final long[] blockers;
+    private final boolean[] networks;
+    // recent[set] is true if the second entry of the set was used last.
+    private final boolean[] recent;
+    private final int mask;
+    private long hits;
+    private long misses;
+
+    // Creates a cache holding at most "entries" results per color (rounded
+    // down to a power of two, and at least two); the colors share one table
+    // of twice that.
+    EvaluationCache(int entries) {
+        int size = 2 * Integer.highestOneBit(Math.max(2, entries));
+        owns = new long[size];
+        blockers = new long[size];
+        networks = new boolean[size];
+        recent = new boolean[size / 2];
+        mask = size / 2 - 1;
+    }
+
+    int capacity() {
+        return owns.length / 2;
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+
+    // Returns true if mColor has a network in position.
+    boolean hasNetwork(Position position, int mColor) {
+        long own = position.bits[mColor];
+        if (!NetworkDetector.possible(own, mColor)) return false;
+        long blocking = position.bits[1 - mColor] & Lines.between(own);
+        int s = mColor == Position.WHITE ? Symmetry.TRANSPOSE : 0;
+        long image = Symmetry.bits(s, own);
+        long canonical = image;
+        int best = s;
+        for (int m = Symmetry.MIRROR_X; m <= (Symmetry.MIRROR_X | Symmetry.MIRROR_Y); m++) {
+            long mirrored = Symmetry.bits(m, image);
+            if (mirrored < canonical) {
+                canonical = mirrored;
+                best = s | m;
+            }
+        }
+        own = canonical;
+        blocking = Symmetry.bits(best, blocking);
+        long hash = (own * 0x9E3779B97F4A7C15L + blocking) * 0xC2B2AE3D27D4EB4FL;
+        int set = (int) (hash >>> 32) & mask;
+        int slot = set << 1;
+        for (int i = slot; i < slot + 2; i++) {
+            if (owns[i] == own && blockers[i] == blocking) {
+                hits++;
+                recent[set] = i != slot;
+                return networks[i];
+            }
+        }
+        misses++;
+        boolean network = position.hasNetwork(mColor);
+        int victim = recent[set] ? slot : slot + 1;
+        owns[victim] = own;
+        blockers[victim] = blocking;
+        networks[victim] = network;
+        recent[set] = victim != slot;
+        return network;
+    }
+}
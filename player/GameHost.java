@@ -0,0 +1,268 @@
+/* GameHost.java */
+
+package player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  Hosts thousands of games at once in one JVM, between two engines (see
+ *  Tournament.Engine), and reports how many moves per second they get
+ *  through and how much memory each game costs.
+ *
+ *  A hosted game is only its position and whose turn it is.  Games take
+ *  turns on a fixed pool of threads: a task plays one move of one game and
+ *  queues the game again, so every game stays in play however many there
+ *  are.  A finished game is replaced by a new one.
+ *
+ *  The search state lives with the threads, not the games.  Each pool
+ *  thread keeps one MachinePlayer per engine and color and sets it up from
+ *  the game's position before every move.  Those players share one
+ *  transposition table per engine and color (the table is lock-free), so
+ *  what one game's search learns about a position serves every game that
+ *  reaches it.  The tables are sized so that they, plus an upper estimate
+ *  of each thread's players, fit the memory cap.  Everything read-only
+ *  (line tables, Zobrist keys, the opening book) is static and already
+ *  shared.
+ *
+ *  Usage:  java player.GameHost [engine A] [engine B] [threads] [MB] [seconds] [games ...]
+ *
+ *  The defaults are "d2" for both engines, one thread per core, 64 MB, 10
+ *  seconds, and runs with 1000 and then 10000 games.
+ */
+public class GameHost {
+    static final long MEGABYTE = 1 << 20;
+    // A transposition table entry: its key, data and score.
+    static final int ENTRY_BYTES = 24;
+    // An upper estimate of one player's own search state: its evaluation
+    // cache, history table, move lists and position.
+    static final long PLAYER_BYTES = 256 * 1024;
+    // The most a Monte Carlo player's tree can take, at about 48 bytes for a
+    // node and its slot in its parent's child array.
+    static final long TREE_BYTES = 48L * MonteCarloSearch.MAX_NODES;
+    static final int START_PLIES = 4;
+
+    /**
+     *  The state of one hosted game.
+     */
+    private static class Game {
+        final Position position;
+        final int whiteSide;
+        int toMove;
+        int plies;
+
+        Game(Position position, int toMove, int whiteSide) {
+            this.position = position;
+            this.toMove = toMove;
+            this.whiteSide = whiteSide;
+        }
+
+        // The engine playing color mColor.
+        int side(int mColor) {
+            return mColor == MachinePlayer.WHITE ? whiteSide : 1 - whiteSide;
+        }
+    }
+
+    private final Tournament.Engine[] engines;
+    private final int threads;
+    private final long memory;
+    // tables[engine][color], null for an engine without one.
+    private final TranspositionTable[][] tables;
+    private final long tableBytes;
+    private final long threadBytes;
+    private final ThreadLocal<MachinePlayer[][]> players;
+
+    private ExecutorService pool;
+    private volatile boolean stopping;
+    private final AtomicLong seeds = new AtomicLong();
+    private final AtomicLong moves = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicLong finished = new AtomicLong();
+    private final AtomicLong[] wins = {new AtomicLong(), new AtomicLong()};
+    private final AtomicLong forfeits = new AtomicLong();
+
+    // Creates a host for games between engines a and b on the given number
+    // of threads, with at most "memory" bytes of search state.  Throws
+    // IllegalArgumentException if that is too little for the threads.
+    public GameHost(String a, String b, int threads, long memory) {
+        engines = new Tournament.Engine[] {new Tournament.Engine(a), new Tournament.Engine(b)};
+        this.threads = Math.max(1, threads);
+        this.memory = memory;
+        long perThread = 0;
+        int hashed = 0;
+        for (Tournament.Engine e : engines) {
+            perThread += 2 * (PLAYER_BYTES + (e.monteCarlo ? TREE_BYTES : 0));
+            if (e.hash) {
+                hashed += 2;
+            }
+        }
+        threadBytes = this.threads * perThread;
+        long spare = memory - threadBytes;
+        if (spare < 0 || (hashed > 0 && spare / hashed / ENTRY_BYTES < 1024)) {
+            throw new IllegalArgumentException((memory / MEGABYTE) + " MB is too little for "
+                                               + this.threads + " threads");
+        }
+        tables = new TranspositionTable[2][2];
+        long bytes = 0;
+        for (int e = 0; e < 2; e++) {
+            for (int c = 0; c < 2 && engines[e].hash; c++) {
+                tables[e][c] = new TranspositionTable((int) Math.min(1 << 30,
+                                                                     spare / hashed / ENTRY_BYTES));
+                bytes += (long) tables[e][c].capacity() * ENTRY_BYTES;
+            }
+        }
+        tableBytes = bytes;
+        players = new ThreadLocal<MachinePlayer[][]>() {
+            protected MachinePlayer[][] initialValue() {
+                MachinePlayer[][] mine = new MachinePlayer[2][2];
+                for (int e = 0; e < 2; e++) {
+                    for (int c = 0; c < 2; c++) {
+                        mine[e][c] = engines[e].player(c, new Position());
+                        mine[e][c].share(tables[e][c]);
+                    }
+                }
+                return mine;
+            }
+        };
+    }
+
+    // Keeps "games" games going for "millis" ms, then lets the moves under
+    // way finish and prints the report.
+    public void run(int games, long millis) {
+        stopping = false;
+        moves.set(0);
+        nanos.set(0);
+        finished.set(0);
+        wins[0].set(0);
+        wins[1].set(0);
+        forfeits.set(0);
+        long before = usedMemory();
+        List<Game> hosted = new ArrayList<Game>(games);
+        for (int i = 0; i < games; i++) {
+            hosted.add(newGame());
+        }
+        long perGame = Math.max(0, usedMemory() - before) / Math.max(1, games);
+        pool = Executors.newFixedThreadPool(threads);
+        long started = System.nanoTime();
+        for (Game g : hosted) {
+            schedule(g);
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stopping = true;
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.HOURS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.println(String.format("%d games of %s vs %s on %d threads, %.1f s",
+                                         games, engines[0].spec, engines[1].spec,
+                                         threads, seconds));
+        System.out.println(String.format("  %d moves, %.0f moves/s, %.2f ms of search per move",
+                                         moves.get(), moves.get() / seconds,
+                                         nanos.get() / 1e6 / Math.max(1, moves.get())));
+        System.out.println(String.format("  %d games finished: A won %d, B won %d, %d forfeits",
+                                         finished.get(), wins[0].get(), wins[1].get(),
+                                         forfeits.get()));
+        System.out.println(String.format("  %d bytes per game; search memory %.1f MB"
+                                         + " (tables %.1f MB, threads %.1f MB) of %.1f MB",
+                                         perGame, (tableBytes + threadBytes) / (double) MEGABYTE,
+                                         tableBytes / (double) MEGABYTE,
+                                         threadBytes / (double) MEGABYTE,
+                                         memory / (double) MEGABYTE));
+    }
+
+    // A game from a fresh seeded opening, the engines taking turns at white.
+    private Game newGame() {
+        while (true) {
+            long seed = seeds.incrementAndGet();
+            Position start = NodeCounter.randomPosition(seed, START_PLIES);
+            if (start != null) {
+                int toMove = START_PLIES % 2 == 0 ? MachinePlayer.WHITE : MachinePlayer.BLACK;
+                return new Game(start, toMove, (int) (seed & 1));
+            }
+        }
+    }
+
+    private void schedule(final Game game) {
+        if (stopping) return;
+        pool.execute(new Runnable() {
+            public void run() {
+                step(game);
+            }
+        });
+    }
+
+    // Plays the next move of game and queues it again, or a new game in its
+    // place if this one is over.
+    private void step(Game game) {
+        if (stopping) return;
+        int mColor = game.toMove;
+        int side = game.side(mColor);
+        MachinePlayer player = players.get()[side][mColor];
+        long started = System.nanoTime();
+        player.setUp(game.position);
+        Move m = player.chooseMove();
+        nanos.addAndGet(System.nanoTime() - started);
+        moves.incrementAndGet();
+        int winner = -1;
+        if (m == null || !game.position.isLegal(m, mColor)) {
+            forfeits.incrementAndGet();
+            winner = 1 - side;
+        } else {
+            game.position.play(m, mColor);
+            game.plies++;
+            int won = game.position.winner(mColor);
+            if (won >= 0) {
+                winner = game.side(won);
+            }
+        }
+        if (winner >= 0 || game.plies >= Tournament.MAX_PLIES) {
+            finished.incrementAndGet();
+            if (winner >= 0) {
+                wins[winner].incrementAndGet();
+            }
+            schedule(newGame());
+        } else {
+            game.toMove = 1 - mColor;
+            schedule(game);
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) {
+        String a = args.length > 0 ? args[0] : "d2";
+        String b = args.length > 1 ? args[1] : "d2";
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                                       : Runtime.getRuntime().availableProcessors();
+        long memory = (args.length > 3 ? Long.parseLong(args[3]) : 64) * MEGABYTE;
+        long millis = (args.length > 4 ? Long.parseLong(args[4]) : 10) * 1000;
+        int[] games = {1000, 10000};
+        if (args.length > 5) {
+            games = new int[args.length - 5];
+            for (int i = 5; i < args.length; i++) {
+                games[i - 5] = Integer.parseInt(args[i]);
+            }
+        }
+        GameHost host = new GameHost(a, b, threads, memory);
+        for (int n : games) {
+            host.run(n, millis);
+        }
+    }
+}
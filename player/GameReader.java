@@ -0,0 +1,133 @@
+/* GameReader.java */
+
+package player;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *  Reads the games of a log written by GameWriter, one at a time, through
+ *  one fixed buffer, so a log of any size is read in constant memory (plus
+ *  the game being read).  Every move is checked against the rules as it is
+ *  read, so a damaged log is reported rather than replayed wrongly.
+ *
+ *  Running this class summarizes a log.  Given a game number and a ply, it
+ *  instead sets up a MachinePlayer as that game stood at that ply and
+ *  prints the move it would play there.
+ *
+ *  Usage:  java player.GameReader file [game ply [depth]]
+ */
+public class GameReader implements Closeable {
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private long games;
+    private boolean eof;
+
+    // Starts reading a log from channel, checking its header.
+    public GameReader(ReadableByteChannel channel) throws IOException {
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(GameWriter.BUFFER);
+        buffer.flip();
+        if (!fill(8) || buffer.getInt() != GameWriter.MAGIC
+            || buffer.getInt() != GameWriter.VERSION) {
+            throw new IOException("not a game log");
+        }
+    }
+
+    public static GameReader open(Path file) throws IOException {
+        return new GameReader(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    // Returns the next game, or null after the last.
+    public GameRecord next() throws IOException {
+        if (!fill(1)) {
+            return null;
+        }
+        int length = PositionCodec.length(buffer.get(buffer.position()));
+        if (!fill(length)) {
+            throw new IOException("game " + games + " is cut short");
+        }
+        Position start = new Position();
+        GameRecord game;
+        try {
+            int mColor = PositionCodec.read(buffer, start);
+            game = new GameRecord(start, mColor);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("game " + games + ": " + e.getMessage());
+        }
+        while (true) {
+            if (!fill(2)) {
+                throw new IOException("game " + games + " is cut short");
+            }
+            int move = buffer.getShort() & 0xFFFF;
+            if (move == 0) break;
+            if (!game.add(move)) {
+                throw new IOException("game " + games + ": illegal move at ply " + game.plies());
+            }
+        }
+        games++;
+        return game;
+    }
+
+    // The number of games read so far.
+    public long games() {
+        return games;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Makes at least n bytes available in the buffer, reading more if need
+    // be.  Returns false if the log ends first.
+    private boolean fill(int n) throws IOException {
+        while (buffer.remaining() < n && !eof) {
+            buffer.compact();
+            eof = channel.read(buffer) < 0;
+            buffer.flip();
+        }
+        return buffer.remaining() >= n;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java player.GameReader file [game ply [depth]]");
+            return;
+        }
+        long wanted = args.length > 2 ? Long.parseLong(args[1]) : -1;
+        int ply = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        try (GameReader reader = open(Paths.get(args[0]))) {
+            long plies = 0;
+            long[] wins = new long[3];
+            for (GameRecord game = reader.next(); game != null; game = reader.next()) {
+                if (reader.games() - 1 == wanted) {
+                    int mColor = game.toMove(ply);
+                    MachinePlayer player = game.player(mColor, ply, depth);
+                    player.setOpeningBook(null);
+                    String played = ply < game.plies() ? game.move(ply).toString() : "none";
+                    System.out.println("Game " + wanted + ", ply " + ply + ": "
+                                       + (mColor == MachinePlayer.WHITE ? "white" : "black")
+                                       + " played " + played + ", depth " + depth
+                                       + " search plays " + player.chooseMove());
+                    return;
+                }
+                plies += game.plies();
+                wins[game.winner() + 1]++;
+            }
+            if (wanted >= 0) {
+                System.out.println("The log has only " + reader.games() + " games");
+                return;
+            }
+            System.out.println(reader.games() + " games, " + plies + " moves; white won "
+                               + wins[MachinePlayer.WHITE + 1] + ", black won "
+                               + wins[MachinePlayer.BLACK + 1] + ", unfinished " + wins[0]);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/* GameRecord.java */
+
+package player;
+
+import java.util.Arrays;
+
+/**
+ *  A game as a starting position and the legal moves played from it.  Moves
+ *  are checked as they are added, so a record always describes a game the
+ *  rules allow, and no move can follow one that ended the game.  Any ply
+ *  of the game can be set up again, as a position or as a MachinePlayer
+ *  ready to continue from there.
+ *
+ *  GameWriter and GameReader store records in a compact binary form: the
+ *  starting position as PositionCodec writes it, then two bytes per move.
+ */
+public class GameRecord {
+    // Longest game a record holds, so a damaged log cannot exhaust memory.
+    static final int MAX_PLIES = 1 << 16;
+
+    private final Position start;
+    private final int first;
+    private final Position current;
+    private int toMove;
+    private int[] moves;
+    private int plies;
+    private int winner;
+
+    // Creates a record of a game from the empty board, white to move.
+    public GameRecord() {
+        this(new Position(), MachinePlayer.WHITE);
+    }
+
+    // Creates a record of a game from a copy of start, mColor to move.
+    GameRecord(Position start, int mColor) {
+        this.start = new Position(start);
+        first = mColor;
+        current = new Position(start);
+        toMove = mColor;
+        moves = new int[16];
+        winner = MachinePlayer.EMPTY;
+    }
+
+    // If m is legal for the color to move, records it and returns true.
+    // Otherwise, or if the game is over, returns false and changes nothing.
+    public boolean add(Move m) {
+        return m != null && current.isLegal(m, toMove) && add(Position.pack(m));
+    }
+
+    // Records the packed move, if legal; see add(Move).
+    boolean add(int move) {
+        if (winner != MachinePlayer.EMPTY || plies >= MAX_PLIES) {
+            return false;
+        }
+        int kind = Position.kind(move);
+        if (kind == Move.ADD && move != Position.add(Position.to(move))) return false;
+        if ((kind != Move.ADD && kind != Move.STEP) || !current.isLegal(move, toMove)) {
+            return false;
+        }
+        if (plies == moves.length) {
+            moves = Arrays.copyOf(moves, 2 * plies);
+        }
+        moves[plies++] = move;
+        current.play(move, toMove);
+        int won = current.winner(toMove);
+        if (won >= 0) {
+            winner = won;
+        }
+        toMove = 1 - toMove;
+        return true;
+    }
+
+    // The number of moves recorded.
+    public int plies() {
+        return plies;
+    }
+
+    // Returns move number ply (from 0).
+    public Move move(int ply) {
+        return Position.unpack(packed(ply));
+    }
+
+    int packed(int ply) {
+        if (ply < 0 || ply >= plies) {
+            throw new IndexOutOfBoundsException("ply " + ply + " of " + plies);
+        }
+        return moves[ply];
+    }
+
+    // Returns the color to move once "ply" moves have been played.
+    public int toMove(int ply) {
+        return ply % 2 == 0 ? first : 1 - first;
+    }
+
+    // Returns the color that has won, or MachinePlayer.EMPTY if the game is
+    // not over.
+    public int winner() {
+        return winner;
+    }
+
+    // Returns the position once "ply" moves have been played, from 0 (the
+    // start) to plies().
+    Position position(int ply) {
+        if (ply < 0 || ply > plies) {
+            throw new IndexOutOfBoundsException("ply " + ply + " of " + plies);
+        }
+        if (ply == plies) {
+            return new Position(current);
+        }
+        Position position = new Position(start);
+        for (int i = 0; i < ply; i++) {
+            position.play(moves[i], toMove(i));
+        }
+        return position;
+    }
+
+    Position start() {
+        return start;
+    }
+
+    // Returns a player of color mColor that searches to searchDepth, set up
+    // as the game stood once "ply" moves had been played.  Its chooseMove
+    // plays the next move if mColor is toMove(ply).
+    public MachinePlayer player(int mColor, int ply, int searchDepth) {
+        return new MachinePlayer(mColor, searchDepth, position(ply));
+    }
+}
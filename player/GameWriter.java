@@ -0,0 +1,89 @@
+/* GameWriter.java */
+
+package player;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *  Writes games to a channel in the game log format, through one fixed
+ *  buffer, so a log may grow to any size in constant memory.
+ *
+ *  Log layout (big-endian): the int magic "NETG" and the int version, then
+ *  the games one after another.  A game is its starting position in the
+ *  form of PositionCodec (the color to move included), then each move as a
+ *  short holding the packed move (Position.pack()), then the short 0, which
+ *  no move packs to.
+ *
+ *  A writer may be shared between threads; each game is written whole.
+ */
+public class GameWriter implements Closeable {
+    static final int MAGIC = 0x4E455447;
+    static final int VERSION = 1;
+    static final int BUFFER = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private long games;
+
+    // Starts a log on channel, writing its header.
+    public GameWriter(WritableByteChannel channel) throws IOException {
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(BUFFER);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+    }
+
+    // Starts a log in the given file, replacing whatever was there.
+    public static GameWriter create(Path file) throws IOException {
+        return new GameWriter(FileChannel.open(file, StandardOpenOption.CREATE,
+                                               StandardOpenOption.TRUNCATE_EXISTING,
+                                               StandardOpenOption.WRITE));
+    }
+
+    public synchronized void write(GameRecord game) throws IOException {
+        room(PositionCodec.MAX_BYTES);
+        PositionCodec.write(game.start(), game.toMove(0), buffer);
+        for (int ply = 0; ply < game.plies(); ply++) {
+            room(2);
+            buffer.putShort((short) game.packed(ply));
+        }
+        room(2);
+        buffer.putShort((short) 0);
+        games++;
+    }
+
+    // The number of games written so far.
+    public synchronized long games() {
+        return games;
+    }
+
+    // Hands everything written so far to the channel.
+    public synchronized void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Makes room for n more bytes in the buffer.
+    private void room(int n) throws IOException {
+        if (buffer.remaining() < n) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/* IterationEvent.java */
+
+package player;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *  A Flight Recorder event for one depth of MachinePlayer's iterative
+ *  deepening, so a slow move can be traced to the depth that took the time.
+ */
+@Name("network.SearchIteration")
+@Label("Network Search Iteration")
+@Category("Network")
+@Description("One depth of an iterative-deepening search")
+class IterationEvent extends Event {
+    @Label("Depth")
+    int depth;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Score")
+    double score;
+
+    @Label("Completed")
+    boolean completed;
+
+    @Label("Aspiration Fail Highs")
+    int failHighs;
+
+    @Label("Aspiration Fail Lows")
+    int failLows;
+}
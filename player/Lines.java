@@ -0,0 +1,166 @@
+/* Lines.java */
+
+package player;
+
+import java.util.Arrays;
+
+/**
+ *  The board's lines of sight, precomputed once when the class is loaded.
+ *  Every lookup of "which chip does this square see" goes through these
+ *  tables: Position.connection() for the network detector and the debugging
+ *  graph, and Connections for the incremental evaluation.
+ *
+ *  A cell index is x + 8 * y.  Directions are numbered clockwise from "up";
+ *  direction d and d + 4 lie on the same line, so (d & 3) identifies the
+ *  line a connection runs along (0 = column, 1 = rising diagonal, 2 = row,
+ *  3 = falling diagonal).
+ */
+class Lines {
+    static final int SIDE = MachinePlayer.SIDE;
+    static final int CELLS = SIDE * SIDE;
+
+    static final int[] DX = {0, 1, 1, 1, 0, -1, -1, -1};
+    static final int[] DY = {-1, -1, 0, 1, 1, 1, 0, -1};
+
+    // RAYS[d][cell] holds the squares seen from cell in direction d, and
+    // RAY_CELLS[d][cell] lists them nearest first.  DESCENDING[d] is true
+    // when those squares have decreasing indices.
+    static final long[][] RAYS = new long[8][CELLS];
+    static final int[][][] RAY_CELLS = new int[8][CELLS][];
+    static final boolean[] DESCENDING = new boolean[8];
+
+    // TARGETS[c][d][cell] holds the squares of RAYS[d][cell] a chip of color
+    // c may stand on, i.e. the ray without the opponent's goal areas and the
+    // corners.  A chip with no own chip on these squares has no connection
+    // that way, whatever else is on the ray.
+    static final long[][][] TARGETS = new long[2][8][CELLS];
+
+    // Masks for between(): every square, every square but the left column
+    // (where a step right lands if it wraps around) and every square but the
+    // right column.
+    static final long ALL = -1L;
+    static final long NOT_LEFT = ~0x0101010101010101L;
+    static final long NOT_RIGHT = ~0x8080808080808080L;
+
+    // LINE[l][cell] is the number of the line through cell along line l, and
+    // LINE_CELLS lists the squares of each numbered line in the order a
+    // connection's owner scans them (directions 0-3).  GOAL_LINE marks the
+    // columns and rows that lie inside a goal area.
+    static final int[][] LINE = new int[4][CELLS];
+    static final int[][] LINE_CELLS;
+    static final boolean[] GOAL_LINE;
+
+    static {
+        for (int d = 0; d < 8; d++) {
+            DESCENDING[d] = DX[d] + SIDE * DY[d] < 0;
+        }
+        for (int c = 0; c < CELLS; c++) {
+            for (int d = 0; d < 8; d++) {
+                int length = 0;
+                int[] cells = new int[SIDE - 1];
+                int i = x(c) + DX[d];
+                int j = y(c) + DY[d];
+                while (onBoard(i, j)) {
+                    int cell = i + SIDE * j;
+                    cells[length++] = cell;
+                    RAYS[d][c] |= 1L << cell;
+                    if (i != 0 && i != SIDE - 1) {
+                        TARGETS[MachinePlayer.BLACK][d][c] |= 1L << cell;
+                    }
+                    if (j != 0 && j != SIDE - 1) {
+                        TARGETS[MachinePlayer.WHITE][d][c] |= 1L << cell;
+                    }
+                    i += DX[d];
+                    j += DY[d];
+                }
+                RAY_CELLS[d][c] = Arrays.copyOf(cells, length);
+            }
+        }
+
+        int[][] cells = new int[4 * 2 * SIDE][];
+        int lines = 0;
+        for (int d = 0; d < 4; d++) {
+            for (int c = 0; c < CELLS; c++) {
+                if (onBoard(x(c) - DX[d], y(c) - DY[d])) continue;
+                int length = RAY_CELLS[d][c].length + 1;
+                cells[lines] = new int[length];
+                cells[lines][0] = c;
+                System.arraycopy(RAY_CELLS[d][c], 0, cells[lines], 1, length - 1);
+                for (int cell : cells[lines]) {
+                    LINE[d][cell] = lines;
+                }
+                lines++;
+            }
+        }
+        LINE_CELLS = new int[lines][];
+        GOAL_LINE = new boolean[lines];
+        for (int l = 0; l < lines; l++) {
+            LINE_CELLS[l] = cells[l];
+            int first = cells[l][0];
+            int last = cells[l][cells[l].length - 1];
+            boolean column = x(first) == x(last);
+            boolean row = y(first) == y(last);
+            GOAL_LINE[l] = (column && (x(first) == 0 || x(first) == SIDE - 1))
+                || (row && (y(first) == 0 || y(first) == SIDE - 1));
+        }
+    }
+
+    private static int x(int cell) {
+        return cell % SIDE;
+    }
+
+    private static int y(int cell) {
+        return cell / SIDE;
+    }
+
+    private static boolean onBoard(int x, int y) {
+        return x >= 0 && x < SIDE && y >= 0 && y < SIDE;
+    }
+
+    // Returns the first square of "occupied" that cell sees in direction
+    // dir, or -1 if there is none.
+    static int first(int dir, int cell, long occupied) {
+        long blockers = RAYS[dir][cell] & occupied;
+        if (blockers == 0) return -1;
+        if (DESCENDING[dir]) {
+            return 63 - Long.numberOfLeadingZeros(blockers);
+        }
+        return Long.numberOfTrailingZeros(blockers);
+    }
+
+    // Returns the squares that lie strictly between two of the given chips
+    // on a line.  Only a chip on one of them can block a connection.
+    static long between(long chips) {
+        return (fill(chips, 8, ALL) & fill(chips, -8, ALL))
+            | (fill(chips, 1, NOT_LEFT) & fill(chips, -1, NOT_RIGHT))
+            | (fill(chips, 9, NOT_LEFT) & fill(chips, -9, NOT_RIGHT))
+            | (fill(chips, 7, NOT_RIGHT) & fill(chips, -7, NOT_LEFT));
+    }
+
+    // Returns the squares beyond the given chips in the direction that
+    // moves a chip "shift" cells up the board's numbering (down it if
+    // negative), looking through anything in the way.  edge holds the
+    // squares a step that way can land on without wrapping around the board.
+    private static long fill(long chips, int shift, long edge) {
+        long open = edge;
+        chips |= open & shift(chips, shift);
+        open &= shift(open, shift);
+        chips |= open & shift(chips, 2 * shift);
+        open &= shift(open, 2 * shift);
+        chips |= open & shift(chips, 4 * shift);
+        return edge & shift(chips, shift);
+    }
+
+    private static long shift(long bits, int n) {
+        return n >= 0 ? bits << n : bits >>> -n;
+    }
+
+    // Returns the square of the mColor chip that cell sees in direction dir,
+    // or -1 if the first chip that way is an opponent's (or there is none).
+    static int partner(int dir, int cell, int mColor, long own, long occupied) {
+        if ((TARGETS[mColor][dir][cell] & own) == 0) return -1;
+        int hit = first(dir, cell, occupied);
+        if (hit < 0 || (own & (1L << hit)) == 0) return -1;
+        return hit;
+    }
+}
@@ -1,11 +1,20 @@
 /* MachinePlayer.java */
 
 package player;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import graph.*;
-import list.InvalidNodeException;
-import list.DList;
-import list.DListNode;
 
 /**
  *  An implementation of an automatic Network player.  Keeps track of moves
@@ -22,55 +31,211 @@ public class MachinePlayer extends Player {
     public static final boolean HUMAN = false;
     public static final double REDUCTION = 0.99;
     public static final double BESTSCORE = 45.0;
+    public static final int HASH_ENTRIES = 1 << 16;
+    public static final int CACHE_ENTRIES = 1 << 12;
+    public static final int PLAYOUTS = 10000;
+    public static final int MAX_DEPTH = 32;
+    private static final double ZERO_WINDOW = 1e-6;
+    private static final double ASPIRATION = 1.0;
+    private static final int NULL_REDUCTION = 2;
+    private static final int LATE_MOVES = 4;
     private int color;
     private int oppColor;
-    private int myCount;
-    private int oppCount;
-    private int[][] board;
-    private int[][][] chips;
+    private Position position;
     private Random generator;
-    private Graph myGraph;
-    private Graph oppGraph;
+    private int searchDepth;
     private int maxDepth;
+    private long timeLimit;
+    private long deadline;
+    private boolean timeUp;
+    private volatile boolean halted;
+    private long nodes;
+    private int depthReached;
+    private double lastScore;
+    private TranspositionTable table;
+    private TranspositionTable.Entry hit;
+    private EvaluationCache cache;
+    private int threads;
+    private ForkJoinPool pool;
+    private boolean ordering;
+    private boolean pvs;
+    private boolean nullMove;
+    private boolean lateReductions;
+    private boolean monteCarlo;
+    private boolean symmetries;
+    private int reduced;
+    private int nullPly;
+    private long researches;
+    private int failHighs;
+    private int failLows;
+    private int[][] killers;
+    private int[][] history;
+    private int previousBest;
+    private int[][] moveLists;
+    private int[] bestMoves;
+    private long[] order;
+    private ConcurrentLinkedQueue<MachinePlayer> helpers;
+    private OpeningBook book;
+    private boolean pondering;
+    private MachinePlayer ponderer;
+    private Thread ponderThread;
+    private SearchStatistics stats;
     
 
   // Creates a machine player with the given color.  Color is either 0 (black)
   // or 1 (white).  (White has the first move.)
   public MachinePlayer(int color) {
-    board = new int[SIDE][SIDE];
-    chips = new int[2][10][2];    
-    myCount = 0;
-    oppCount = 0;
-    for (int i = 0; i < SIDE; i++) {
-        for (int j = 0; j < SIDE; j++) {      
-            board[i][j] = EMPTY;
-        }
-    }
+    this(color, 3);
+  }
+
+  // Creates a machine player with the given color and search depth, which is
+  // kept between 1 and MAX_DEPTH.  Color is either 0 (black) or 1 (white).
+  // (White has the first move.)
+  public MachinePlayer(int color, int searchDepth) {
+    position = new Position();
     this.color = color;
     this.oppColor = BLACK;
     if (this.color == BLACK) {
         this.oppColor = WHITE;
     }
     generator = new Random();
-    myGraph = new Graph();
-    oppGraph = new Graph();    
-    maxDepth = 3;
+    this.searchDepth = Math.max(1, Math.min(MAX_DEPTH, searchDepth));
+    maxDepth = this.searchDepth;
+    timeLimit = 0;
+    table = new TranspositionTable(HASH_ENTRIES);
+    hit = new TranspositionTable.Entry();
+    cache = new EvaluationCache(CACHE_ENTRIES);
+    threads = 1;
+    ordering = true;
+    pvs = true;
+    nullMove = false;
+    lateReductions = false;
+    symmetries = true;
+    nullPly = -1;
+    killers = new int[MAX_DEPTH + 1][2];
+    history = new int[2][1 << 12];
+    moveLists = new int[MAX_DEPTH + 1][];
+    bestMoves = new int[MAX_DEPTH + 1];
+    order = new long[Position.MAX_MOVES];
+    helpers = new ConcurrentLinkedQueue<MachinePlayer>();
+    book = OpeningBook.standard();
   }
 
-  // Creates a machine player with the given color and search depth.  Color is
-  // either 0 (black) or 1 (white).  (White has the first move.)
-  public MachinePlayer(int color, int searchDepth) {
+  // Creates a machine player with the given color and search depth that
+  // starts from a copy of the given position.
+  MachinePlayer(int color, int searchDepth, Position start) {
+    this(color, searchDepth);
+    position = new Position(start);
+  }
+
+  // Creates a helper for a parallel search.  It searches a private copy of
+  // player's position, sharing only the transposition table, and keeps its
+  // move lists, killers and history between the root moves it is given.
+  private MachinePlayer(MachinePlayer player) {
+    this(player.color, player.searchDepth);
+    generator = player.generator;
+    history[BLACK] = player.history[BLACK].clone();
+    history[WHITE] = player.history[WHITE].clone();
+  }
+
+  // Readies this helper to search a root move of player's current search.
+  private void prepare(MachinePlayer player) {
+    position.copy(player.position);
+    maxDepth = player.maxDepth;
+    deadline = player.deadline;
+    timeUp = false;
+    nodes = 0;
+    table = player.table;
+    if (player.cache == null) {
+        cache = null;
+    } else if (cache == null || cache.capacity() != player.cache.capacity()) {
+        cache = new EvaluationCache(player.cache.capacity());
+    }
+    ordering = player.ordering;
+    pvs = player.pvs;
+    nullMove = player.nullMove;
+    lateReductions = player.lateReductions;
+    symmetries = player.symmetries;
+    reduced = 0;
+    nullPly = -1;
+    researches = 0;
+    if (player.stats == null) {
+        stats = null;
+    } else if (stats == null) {
+        stats = new SearchStatistics();
+    } else {
+        stats.reset();
+    }
+  }
+
+  // Makes this player continue from a copy of the given position, keeping
+  // what its tables remember from earlier searches.
+  void setUp(Position start) {
+    stopPondering();
+    position.copy(start);
+  }
+
+  // Makes this player search with the given transposition table, which
+  // other players of the same color and settings may share (null for none).
+  void share(TranspositionTable shared) {
+    stopPondering();
+    table = shared;
+  }
+
+  // Makes this player start over from a copy of the given position, with
+  // nothing remembered from earlier searches, so that what it finds depends
+  // on the position alone.
+  void reset(Position start) {
+    setUp(start);
+    if (table != null) {
+        table.clear();
+    }
+    for (int[] h : history) {
+        Arrays.fill(h, 0);
+    }
   }
 
   // Returns a new move by "this" player.  Internally records the move (updates
   // the internal game board) as a move by "this" player.
   public Move chooseMove() {
     Move m;
+    SearchEvent event = new SearchEvent();
+    event.begin();
+    long start = System.nanoTime();
+    stopPondering();
+    if (table != null) {
+        table.newSearch();
+    }
+    newSearch();
     // m = chooseRandomMove();
     // m = chooseDepthOneMove();
-    m = chooseABmove();
+    m = bookMove();
+    boolean fromBook = m != null;
+    if (m == null && monteCarlo) {
+        m = chooseMonteCarloMove();
+    } else if (m == null) {
+        m = chooseABmove();
+    }
+    if (stats != null) {
+        stats.finish(System.nanoTime() - start, depthReached, fromBook);
+    }
+    event.end();
+    if (event.shouldCommit()) {
+        event.color = color;
+        event.depth = depthReached;
+        event.nodes = nodes;
+        event.book = fromBook;
+        if (stats != null) {
+            event.cutoffs = stats.getCutoffs();
+            event.firstMoveCutoffRate = stats.getFirstMoveCutoffRate();
+            event.branchingFactor = stats.getBranchingFactor();
+            event.winChecks = stats.getWinChecks();
+        }
+        event.commit();
+    }
     
-    makeMove(m,this.color);
+    position.play(m, this.color);
+    startPondering();
         
     // generateGraph(this.color);
     // graph.debugPrint();
@@ -83,12 +248,13 @@ public class MachinePlayer extends Player {
   // illegal, returns false without modifying the internal state of "this"
   // player.  This method allows your opponents to inform you of their moves.
   public boolean opponentMove(Move m) {
+    stopPondering();
     int moveColor = BLACK;
     if (this.color == BLACK) {
         moveColor = WHITE;
     }
     if (isMoveValid(m,moveColor)){
-        makeMove(m,moveColor);        
+        position.play(m, moveColor);
         return true;
     } else {
         return false;
@@ -101,434 +267,311 @@ public class MachinePlayer extends Player {
   // player.  This method is used to help set up "Network problems" for your
   // player to solve.
   public boolean forceMove(Move m) {
-    return false;
+    stopPondering();
+    if (isMoveValid(m,color)) {
+        position.play(m, color);
+        return true;
+    } else {
+        return false;
+    }
   }
 
-    private Move chooseRandomMove(){
-        Move[] movesArray = getMoves(color);
-        return movesArray[generator.nextInt(movesArray.length)];
+  // "Network problem" mode: returns a move with which this player completes
+  // a network within the given number of its own moves however the opponent
+  // replies, or null if there is no such move.  The answer is exact; see
+  // NetworkSolver.  The board is left as it was.
+  public Move solveNetwork(int moves) {
+    NetworkSolver solver = new NetworkSolver(position, color);
+    int result = solver.solve(moves);
+    nodes = solver.nodes();
+    if (result != NetworkSolver.PROVEN || solver.move() == 0) {
+        return null;
     }
+    return Position.unpack(solver.move());
+  }
 
-    private int countNeighbours(int x, int y, int moveColor, boolean initial) {
-        int c = 0;
-        for (int i = Math.max(0, x - 1); i <= Math.min(SIDE - 1, x + 1); i++) {
-            for (int j = Math.max(0, y - 1); j <= Math.min(SIDE - 1, y + 1); j++) {
-                if ((i != x) || (j != y)) {
-                    if (board[i][j] == moveColor) {
-                        if (initial) {
-                            int c1 = countNeighbours(i, j, moveColor, false);
-                            if (c1 > 1) {
-                                return c1;
-                            }
-                        }
-                        c++;
-                    }
-                }
-            }
-        }
-        return c;
+  // Switches chooseMove to iterative deepening: it searches to depth 1, 2,
+  // 3... and plays the best move of the deepest search that finished within
+  // the given number of milliseconds.  0 goes back to the fixed search depth.
+  public void setTimeLimit(long millis) {
+    timeLimit = Math.max(0, millis);
+  }
+
+  // Sets the number of threads chooseMove searches with.  With more than
+  // one, the moves at the root are shared out over a pool of that size.
+  public void setThreads(int n) {
+    n = Math.max(1, n);
+    if (n != threads && pool != null) {
+        pool.shutdown();
+        pool = null;
+    }
+    threads = n;
+    if (threads > 1 && pool == null) {
+        pool = new ForkJoinPool(threads);
     }
-    private boolean isMoveValid(Move m, int mColor) {
+  }
 
-        // if destination is not free - false
-        if (board[m.x1][m.y1] != EMPTY) {
-            // System.out.println("Cell is occupied.");
-            return false;
-        }
-        // if position is out of bounds - false
-        if ((m.x1 == 0 && m.y1 == 0) ||
-            (m.x1 == SIDE - 1 && m.y1 == SIDE - 1) ||
-            (m.x1 == 0 && m.y1 == SIDE - 1) ||
-            (m.x1 == SIDE - 1 && m.y1 == 0)) {
-            // System.out.println("Corner move.");
-            return false;
-        }
-        if (mColor == BLACK) {
-            if (m.x1 == 0 || m.x1 == SIDE - 1) {
-                // System.out.println("Black cannot move here.");
-                return false;
-            }
-        }
-        if (mColor == WHITE) {
-            if (m.y1 == 0 || m.y1 == SIDE - 1) {
-                // System.out.println("White cannot move here.");
-                return false;
-            }
-        }
-        if (m.moveKind == Move.ADD) {
-            if (mColor == color) {
-                if (this.myCount >= 10) {
-                    // System.out.println("Too many chips!");
-                    return false;
-                }
-            } else {
-                if (this.oppCount >= 10) {
-                    // System.out.println("Too many chips!");
-                    return false;
-                }
-            }
-        } else {
-            if (mColor == color) {
-                if (this.myCount < 10) {
-                    // System.out.println("Too few chips!");                
-                    return false;
-                }
-            } else {
-                if (this.oppCount < 10) {
-                    // System.out.println("Too few chips!");                                
-                    return false;
-                }
-            }
-        }
-        
-        if (m.moveKind == Move.STEP) {
-            if (board[m.x2][m.y2] != mColor) {
-                // System.out.println("Attempt to move opponent's chip.");                                            
-                return false;
-            }
-            if (m.x1 == m.x2 && m.y1 == m.y2) {
-                // System.out.println("Attempt to move a chip onto itself.");                                            
-                return false;
-            }
-            board[m.x2][m.y2] = EMPTY;
+  // Turns move ordering (hash move, killer moves and history heuristic) on
+  // or off.  Without it moves are searched in the order they are generated.
+  public void setMoveOrdering(boolean on) {
+    ordering = on;
+  }
+
+  // Turns principal variation search on or off.  With it, every move after
+  // the first is searched with a zero window and only searched again with
+  // the full window if it might be better, and chooseMove always deepens one
+  // ply at a time, starting each depth from a window around the previous
+  // depth's score.
+  public void setPrincipalVariation(boolean on) {
+    pvs = on;
+  }
+
+  // Turns null-move pruning on or off.  With it, a position where the side
+  // to move would still be doing well enough after passing is not searched
+  // any further, the pass being searched NULL_REDUCTION plies shallower.
+  public void setNullMove(boolean on) {
+    nullMove = on;
+  }
+
+  // Turns late move reductions on or off.  With them, the moves ordered
+  // after the first LATE_MOVES are searched a ply shallower with a zero
+  // window first, and only searched in full if that says they may be better.
+  // Needs move ordering.
+  public void setLateMoveReductions(boolean on) {
+    lateReductions = on;
+  }
+
+  // Switches between alpha-beta search (the default) and Monte Carlo tree
+  // search.  Monte Carlo search runs for the time limit, or PLAYOUTS
+  // playouts without one, on the threads set by setThreads; getNodeCount
+  // then counts playouts.
+  public void setMonteCarlo(boolean on) {
+    monteCarlo = on;
+  }
+
+  // Turns the sharing of transposition table entries between symmetric
+  // positions on or off.  With it, a position is looked up and stored as its
+  // canonical image (see Symmetry), so a result found for one position also
+  // serves its mirror images and, with the colors swapped, its transposes.
+  public void setSymmetries(boolean on) {
+    stopPondering();
+    symmetries = on;
+  }
+
+  // Turns pondering on or off.  With it, once chooseMove has played, a
+  // background thread searches the position the opponent now faces, deeper
+  // and deeper, until the opponent's move arrives.  Its results go into the
+  // transposition table, so the search after the opponent's move starts
+  // from what was found about that reply.  Needs the transposition table.
+  public void setPondering(boolean on) {
+    if (!on) {
+        stopPondering();
+    }
+    pondering = on;
+  }
+
+  // Turns the recording of search statistics on or off.  They cost a few
+  // counter updates per position searched, so they are off by default.
+  public void setStatistics(boolean on) {
+    if (!on) {
+        stats = null;
+    } else if (stats == null) {
+        stats = new SearchStatistics();
+    }
+  }
+
+  // Returns a copy of the statistics of the last call to chooseMove, or null
+  // if they are not being recorded.
+  public SearchStatistics getStatistics() {
+    if (stats == null) {
+        return null;
+    }
+    return new SearchStatistics(stats);
+  }
+
+  // Returns the number of positions visited by the last call to chooseMove.
+  public long getNodeCount() {
+    return nodes;
+  }
+
+  // Returns the depth of the deepest search the last call to chooseMove
+  // finished, or 0 if it played a book move.
+  public int getDepth() {
+    return depthReached;
+  }
+
+  // Returns the score the last call to chooseMove's search gave its move,
+  // from this player's side: above 0 is good for it, and BESTSCORE scaled by
+  // REDUCTION per ply is a forced win.  0 for a book move.  After a Monte
+  // Carlo search, twice the share of the move's playouts won, less 1.
+  public double getScore() {
+    return lastScore;
+  }
+
+  // Returns how many zero-window searches of the last call to chooseMove
+  // failed high and had to be repeated with the full window.
+  public long getResearchCount() {
+    return researches;
+  }
+
+  // Returns how many times the aspiration window of the last call to
+  // chooseMove failed high (the score was above it) and had to be widened.
+  public int getFailHighCount() {
+    return failHighs;
+  }
+
+  // Returns how many times the aspiration window of the last call to
+  // chooseMove failed low (the score was below it) and had to be widened.
+  public int getFailLowCount() {
+    return failLows;
+  }
+
+  // Makes chooseMove play from the opening book in the given file, made by
+  // running OpeningBook, while it has chips left to add.  Returns false,
+  // leaving the current book in place, if the file can't be read.  null
+  // turns the book off.
+  public boolean setOpeningBook(String file) {
+    if (file == null) {
+        book = null;
+        return true;
+    }
+    try {
+        book = OpeningBook.open(Paths.get(file));
+        return true;
+    } catch (IOException e) {
+        return false;
+    }
+  }
+
+  // Resizes the transposition table to hold the given number of entries
+  // (rounded down to a power of two), discarding its contents.  0 turns the
+  // table off.
+  public void setHashSize(int entries) {
+    stopPondering();
+    if (entries <= 0) {
+        table = null;
+    } else {
+        table = new TranspositionTable(entries);
+    }
+  }
+
+  // Sets the number of network checks per color the evaluation cache holds,
+  // rounded down to a power of two; 0 turns the cache off.  Each search
+  // thread has its own cache of this size.
+  public void setEvaluationCache(int entries) {
+    stopPondering();
+    if (entries <= 0) {
+        cache = null;
+    } else {
+        cache = new EvaluationCache(entries);
+    }
+  }
+
+    // Returns the book move for the current position, or null if it is not
+    // in the book.
+    private Move bookMove() {
+        if (book == null || position.count(color) >= Position.CHIPS) {
+            return null;
         }
-        
-        board[m.x1][m.y1] = mColor;
-        int cNeighbours = countNeighbours(m.x1, m.y1, mColor, true);
-        // System.out.println("The count is => " + cNeighbours);
-        if (cNeighbours > 1) {
-            // System.out.println("Connected group is too big: " + cNeighbours);
-            if (m.moveKind == Move.STEP) {
-                board[m.x2][m.y2] = mColor;
-            }
-            board[m.x1][m.y1] = EMPTY;
-            return false;
-        } else {
-            if (m.moveKind == Move.STEP) {
-                board[m.x2][m.y2] = mColor;
-            }
-            board[m.x1][m.y1] = EMPTY;
-            return true;
+        int move = book.probe(position, color);
+        if (move == 0 || !position.isLegal(move, color)) {
+            return null;
         }
+        return Position.unpack(move);
+    }
+
+    private Move chooseRandomMove(){
+        Move[] movesArray = getMoves(color);
+        return movesArray[generator.nextInt(movesArray.length)];
+    }
+
+    boolean isMoveValid(Move m, int mColor) {
+        return position.isLegal(m, mColor);
     }
     
     private void undoMove(Move m, int mColor) {
-        board[m.x1][m.y1] = EMPTY;
-        if (m.moveKind == Move.STEP) {
-            board[m.x2][m.y2] = mColor;
-            int pos = 0;
-            for (int i = 0; i < 10; i++) {
-                if (m.x1 == chips[mColor][i][X] && m.y1 == chips[mColor][i][Y]) {
-                    pos = i;
-                }
-            }
-            chips[mColor][pos][X] = m.x2;
-            chips[mColor][pos][Y] = m.y2;            
-        } else if (mColor == this.color) {
-            myCount--; 
-        } else {
-            oppCount--;
-        }        
+        position.undo(m, mColor);
     }
     
     private void makeMove(Move m, int mColor) {
-        if (m.moveKind == Move.STEP) {
-            int pos = 0;
-            for (int i = 0; i < 10; i++) {
-                if (m.x2 == chips[mColor][i][X] && m.y2 == chips[mColor][i][Y]) {
-                    pos = i;
-                }
-            }
-            chips[mColor][pos][X] = m.x1;
-            chips[mColor][pos][Y] = m.y1;            
-            board[m.x2][m.y2] = EMPTY;
-        } else if (mColor == this.color) {
-            chips[mColor][myCount][X] = m.x1;
-            chips[mColor][myCount][Y] = m.y1;                     
-            myCount++; 
-        } else {
-            chips[mColor][oppCount][X] = m.x1;
-            chips[mColor][oppCount][Y] = m.y1;                     
-            oppCount++;
-        }
-        board[m.x1][m.y1] = mColor;
+        position.make(m, mColor);
     }
-    private Move[] getMoves(int mColor) {
-        int countToCompare = this.oppCount;
-        if (this.color == mColor) {
-            countToCompare = this.myCount;
-        }
-        if (countToCompare < 10) {
-            return getAddMoves(mColor,0,0);
-        } else {
-            return getStepMoves(1,0,mColor,0);
+    // Returns the legal moves of mColor as Move objects.  The search itself
+    // uses Position.generate() and packed moves.
+    Move[] getMoves(int mColor) {
+        int[] packed = new int[Position.MAX_MOVES];
+        int count = position.generate(mColor, packed);
+        Move[] moves = new Move[count];
+        for (int i = 0; i < count; i++) {
+            moves[i] = Position.unpack(packed[i]);
         }
+        return moves;
     }
-    private Move[] getAddMoves(int mColor, int cCount, int mCount) {
-        if (cCount == 48) {
-            return new Move[mCount];
-        } else {
-            int x;
-            int y;
-            if (mColor == WHITE) {
-                x = cCount % SIDE;
-                y = cCount / SIDE + 1;
-            } else {
-                x = cCount % 6 + 1;
-                y = cCount / 6;
-            }
-            Move currMove = new Move(x,y);
-            if (isMoveValid(currMove, mColor)) {
-                Move[] mArr = getAddMoves(mColor, cCount + 1, mCount + 1);
-                mArr[mCount] = currMove;
-                return mArr;
-            } else {
-                return getAddMoves(mColor, cCount + 1, mCount);
-            }
-        }
-    }
-
-    private Move[] getStepMoves(int currChip, int currCell, int mColor, int moveCount) {
-        if (currChip == 10 && currCell == 48) {
-            return new Move[moveCount];
-        } else if (currCell == 48) {
-            return getStepMoves(currChip + 1, 0, mColor, moveCount);
-        } else {
-            int x;
-            int y;
-            if (mColor == WHITE) {
-                x = currCell % SIDE;
-                y = currCell / SIDE + 1;
-            } else {
-                x = currCell % 6 + 1;
-                y = currCell / 6;
-            }
-            Move currMove = new Move(x,y,chips[mColor][currChip - 1][X],chips[mColor][currChip -1][Y]);
-            if (isMoveValid(currMove,mColor)) {
-                Move[] mArr = getStepMoves(currChip,currCell + 1, mColor, moveCount + 1);
-                mArr[moveCount] = currMove;
-                return mArr;
-            } else {
-                return getStepMoves(currChip,currCell + 1,mColor,moveCount);
-            }
+    // The reusable move list for the given ply.
+    private int[] moveList(int depth) {
+        if (moveLists[depth] == null) {
+            moveLists[depth] = new int[Position.MAX_MOVES];
         }
+        return moveLists[depth];
     }
     public void printChips() {
         System.out.print("Black: ");
         for (int i = 0; i < 10; i++) {
-            System.out.print("[" + chips[BLACK][i][X] + "," + chips[BLACK][i][Y] + "] ");
+            int chip = position.chip(BLACK, i);
+            System.out.print("[" + Position.x(chip) + "," + Position.y(chip) + "] ");
         }
         System.out.println();
         System.out.print("White: ");
         for (int i = 0; i < 10; i++) {
-            System.out.print("[" + chips[WHITE][i][X] + "," + chips[WHITE][i][Y] + "] ");
+            int chip = position.chip(WHITE, i);
+            System.out.print("[" + Position.x(chip) + "," + Position.y(chip) + "] ");
         }
         System.out.println();
-        System.out.println("My count: " + myCount + " Opp count: " + oppCount);
+        System.out.println("My count: " + position.count(color)
+                           + " Opp count: " + position.count(oppColor));
     }
-    private Graph generateGraph(int mColor, int mCount) {
+    // Builds the connection graph of mColor's chips.  Chips are visited in
+    // the order they were added and each looks up, up-right, right and
+    // down-right, so every connection is inserted exactly once and always in
+    // the same order.
+    Graph generateGraph(int mColor) {
         Graph graph = new Graph();
+        int mCount = position.count(mColor);
+        Vertex[] vertices = new Vertex[Position.CELLS];
         for (int i = 0; i < mCount; i++) {
-            graph.insertVertex(new Vertex(
-                chips[mColor][i][X],
-                chips[mColor][i][Y]));
+            int chip = position.chip(mColor, i);
+            vertices[chip] = new Vertex(Position.x(chip), Position.y(chip));
+            graph.insertVertex(vertices[chip]);
         }
-        int x;
-        int y;
-        int [] destination;
         for (int i = 0; i < mCount; i++) {
-            x = chips[mColor][i][X];
-            y = chips[mColor][i][Y];
-            destination = try0(x,y,mColor);
-            if (destination[X] != 0 || destination[Y] != 0) {
-                graph.insertEdge(new Edge(
-                    0,
-                    graph.getVertex(x,y),
-                    graph.getVertex(destination[X],destination[Y])));
-            }
-            destination = try1(x,y,mColor);            
-            if (destination[X] != 0 || destination[Y] != 0) {
-                graph.insertEdge(new Edge(
-                    1,
-                    graph.getVertex(x,y),
-                    graph.getVertex(destination[X],destination[Y])));
-            }
-            destination = try3(x,y,mColor);
-            if (destination[X] != 0 || destination[Y] != 0) {
-                graph.insertEdge(new Edge(
-                    3,
-                    graph.getVertex(x,y),
-                    graph.getVertex(destination[X],destination[Y])));
-            }
-            destination = try4(x,y,mColor);
-            if (destination[X] != 0 || destination[Y] != 0) {
-                graph.insertEdge(new Edge(
-                    4,
-                    graph.getVertex(x,y),
-                    graph.getVertex(destination[X],destination[Y])));
+            int chip = position.chip(mColor, i);
+            for (int dir = 0; dir < 4; dir++) {
+                int destination = position.connection(chip, dir, mColor);
+                if (destination >= 0) {
+                    graph.insertEdge(new Edge(dir, vertices[chip], vertices[destination]));
+                }
             }
         }
         return graph;
     }
-    private int[] try0(int x, int y, int mColor) {
-        int[] destination = {0, 0};
-        int topBorder = 1;
-        if (mColor == BLACK) {
-            topBorder = 0;
-        }
-        for (int i = y-1; i >= topBorder; i--) {
-            if (board[x][i] == mColor) {
-                destination[X] = x;
-                destination[Y] = i;
-                return destination;
-            } else if (board[x][i] != EMPTY) {
-                return destination;
-            }
+    boolean isWinningGrid(int mColor) {
+        if (stats != null) {
+            stats.winCheck();
         }
-        return destination;
-     }
-    private int[] try1(int x, int y, int mColor) {
-        int[] destination = {0, 0};
-        int rightBorder = 7;
-        int topBorder = 1;
-        if (mColor == BLACK) {
-            rightBorder = 6;
-            topBorder = 0;            
-        }
-        int i = x + 1;
-        int j = y - 1;
-        while (i <= rightBorder && j >= topBorder) {
-            if (board[i][j] == mColor) {
-                destination[X] = i;
-                destination[Y] = j;
-                return destination;
-            } else if (board[i][j] != EMPTY) {
-                return destination;
-            }
-            i++;
-            j--;
-        }
-        return destination;
-     }
-    private int[] try3(int x, int y, int mColor) {
-        int[] destination = {0, 0};
-        int rightBorder = 7;
-        if (mColor == BLACK) {
-            rightBorder = 6;
-        }
-        for (int i = x+1; i <= rightBorder; i++) {
-            if (board[i][y] == mColor) {
-                destination[X] = i;
-                destination[Y] = y;
-                return destination;
-            } else if (board[i][y] != EMPTY) {
-                return destination;
-            }
+        if (cache != null && stats != null) {
+            long hits = cache.hits();
+            long misses = cache.misses();
+            boolean network = cache.hasNetwork(position, mColor);
+            stats.cacheLookup(cache.hits() - hits, cache.misses() - misses);
+            return network;
         }
-        return destination;
-     }
-    private int[] try4(int x, int y, int mColor) {
-        int[] destination = {0, 0};
-        int rightBorder = 7;
-        int bottomBorder = 6;
-        if (mColor == BLACK) {
-            rightBorder = 6;
-            bottomBorder = 7;
-        }
-        int i = x + 1;
-        int j = y + 1;
-        while (i <= rightBorder && j <= bottomBorder) {
-            if (board[i][j] == mColor) {
-                destination[X] = i;
-                destination[Y] = j;
-                return destination;
-            } else if (board[i][j] != EMPTY) {
-                return destination;
-            }
-            i++;
-            j++;
-        }
-        return destination;
-     }
-    private boolean visitVertex(Vertex v, int depth, int direction, int mColor) {
-        if (v.visited()) return false;
-        if ((mColor == BLACK && v.y() == 7) || (mColor == WHITE && v.x() == 7)) {
-            if (depth >= 5) {
-                return true;
-            } else {
-                return false;
-            }
-        } else if ((depth > 0) && ((mColor == BLACK && v.y() == 0) || (mColor == WHITE && v.x() == 0))) {
-            return false;
-        } else {
-            v.visit();
-            boolean result = tryEdges(v.incidentEdges(),depth,direction,mColor,v);
-            v.reset();
-            return result;
-        }
-    }
-    private boolean tryEdges(DList edges, int depth, int direction, int mColor, Vertex from) {
-        try {
-            if (edges.length() == 0) return false;
-            DListNode currEdgeNode = (DListNode) edges.front();
-            Edge currEdge = (Edge) currEdgeNode.item();
-            if (currEdge.direction() == direction) {
-                currEdgeNode.remove();
-                return tryEdges(edges, depth, direction, mColor, from);
-            }
-            if (visitVertex(currEdge.opposite(from), depth + 1, currEdge.direction(), mColor)) {
-                return true;
-            }
-            currEdgeNode.remove();
-            return tryEdges(edges, depth, direction, mColor, from);
-        } catch (InvalidNodeException e) {
-            System.out.println(e);
-            return false;
-        }
-    }
-    private boolean isWinningGrid(int mColor, Graph graph) {
-        int foundStart = 0;
-        int foundFinish = 0;
-        int[][] startChips = new int[6][2];
-        int currCount = oppCount;
-        if (mColor == color) {
-            currCount = myCount;
-        }
-        if (currCount < 6) return false;
-        for (int i = 0; i < currCount; i++) {
-            if (mColor == BLACK) {
-                if (chips[mColor][i][Y] == 0) {
-                    startChips[foundStart][X] = chips[mColor][i][X];
-                    startChips[foundStart][Y] = chips[mColor][i][Y];
-                    foundStart++;
-                }
-                if (chips[mColor][i][Y] == 7) {
-                    foundFinish++;
-                }
-            } else {
-                if (chips[mColor][i][X] == 0) {
-                    startChips[foundStart][X] = chips[mColor][i][X];
-                    startChips[foundStart][Y] = chips[mColor][i][Y];
-                    foundStart++;
-                }
-                if (chips[mColor][i][X] == 7) {
-                    foundFinish++;
-                }
-            }
+        if (cache != null) {
+            return cache.hasNetwork(position, mColor);
         }
-        if (foundStart == 0 || foundFinish == 0) return false;
-        if (currCount - foundStart - foundFinish < 4) return false;
-        return checkChips(startChips,0,foundStart,mColor,graph);
-    }
-    private boolean checkChips(int[][] startChips, int fromChip, int toChip, int mColor, Graph graph) {
-        if (fromChip >= toChip) return false;
-        graph.reset();
-        Vertex v = graph.getVertex(startChips[fromChip][X],startChips[fromChip][Y]);
-        if (visitVertex(v,0,-1,mColor)) return true;
-        return checkChips(startChips,fromChip + 1,toChip,mColor, graph);
+        return position.hasNetwork(mColor);
     }
     private Move chooseDepthOneMove(){
-        if (myCount == 0) {
+        if (position.count(color) == 0) {
             Move m;
             if(color == BLACK) {
                 m = new Move(3,0);
@@ -536,7 +579,7 @@ public class MachinePlayer extends Player {
                 m = new Move(0,3);
             }
             return m;
-        } else if (myCount == 1) {
+        } else if (position.count(color) == 1) {
             Move m;
             if(color == BLACK) {
                 m = new Move(4,7);
@@ -551,14 +594,12 @@ public class MachinePlayer extends Player {
         Move bestMove = new Move();
         for(Move m: movesArray) {
             makeMove(m,color);
-            myGraph = generateGraph(color, myCount);
-            oppGraph = generateGraph(oppColor, oppCount);            
-            if (isWinningGrid(color,myGraph)) {
+            if (isWinningGrid(color)) {
                 undoMove(m,color);
                 System.out.println("Winning move detected!");
                 return m;
             }
-            score = evaluateBoard(myGraph,oppGraph);
+            score = evaluateBoard();
             if (score > bestScore) {
                 bestScore = score;
                 bestMove = m;
@@ -567,81 +608,547 @@ public class MachinePlayer extends Player {
         }
         return bestMove;
     }
-    private double evaluateBoard(Graph graph, Graph other) {
-        double myEdges = graph.getEdgeCount();
-        double oppEdges = other.getEdgeCount();
+    double evaluateBoard() {
+        double myEdges = position.edgeCount(color);
+        double oppEdges = position.edgeCount(oppColor);
         // return (myEdges - oppEdges) /45.0;
         return (myEdges - oppEdges) * 1.0;
     }
-    private Best chooseAB(boolean side, double alpha, double beta, int depth) {
-        Best myBest = new Best();
-        Best reply;
-        Move[] moves;
+    // Searches the position to maxDepth and returns its score for this
+    // player; side says whose turn it is.  The best move found is left in
+    // bestMoves[depth].
+    private double chooseAB(boolean side, double alpha, double beta, int depth) {
+        bestMoves[depth] = 0;
+        if ((++nodes & 255) == 0
+            && (halted || (deadline != 0 && System.currentTimeMillis() >= deadline))) {
+            timeUp = true;
+        }
+        if (timeUp) {
+            return 0;
+        }
+        if (stats != null) {
+            stats.node(depth);
+        }
         int mColor = oppColor;
         if (side == COMPUTER) {
             mColor = color;
         }
-        myGraph = generateGraph(color,myCount);
-        oppGraph = generateGraph(oppColor,oppCount);
-
-        if (isWinningGrid(oppColor,oppGraph)) {
-            myBest.score = -BESTSCORE * Math.pow(REDUCTION,depth - 1);
+        double scale = Math.pow(REDUCTION, depth - 1);
+        int remaining = this.maxDepth - depth - reduced;
+        int symmetry = table != null && symmetries ? position.symmetry(mColor) : 0;
+        long key = position.key(mColor, symmetry);
+        int hashMove = 0;
+        if (depth == 0) {
+            hashMove = previousBest;
+        }
+        if (table != null && table.probe(key, symmetry, hit)) {
+            hashMove = hit.move;
+            if (depth > 0 && hit.depth >= remaining) {
+                double score = hit.score * scale;
+                int flag = hit.flag;
+                if (flag == TranspositionTable.EXACT
+                    || (flag == TranspositionTable.LOWER && score >= beta)
+                    || (flag == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+        if (isWinningGrid(oppColor)) {
+            return -BESTSCORE * scale;
+        }
+        if (isWinningGrid(color)) {
+            return BESTSCORE * scale;
+        }
+        if (remaining <= 0) {
+            return evaluateBoard() * scale;
+        }
+        if (nullMove && depth > 0 && remaining > NULL_REDUCTION && nullPly != depth - 1) {
+            if (side == COMPUTER && evaluateBoard() * scale >= beta
+                && passes(side, beta - ZERO_WINDOW, beta, depth) >= beta) {
+                return beta;
+            }
+            if (side == HUMAN && evaluateBoard() * scale <= alpha
+                && passes(side, alpha, alpha + ZERO_WINDOW, depth) <= alpha) {
+                return alpha;
+            }
+            if (timeUp) {
+                return 0;
+            }
+        }
+        double best = beta;
+        if (side == COMPUTER) {
+            best = alpha;
+        }
+        int bestMove = 0;
+        double alphaOrig = alpha;
+        double betaOrig = beta;
+        int[] moves = moveList(depth);
+        int count = position.generate(mColor, moves);
+        if (ordering) {
+            orderMoves(moves, count, mColor, depth, hashMove);
+        }
+        int tried = count;
+        for (int i = 0; i < count; i++) {
+            int m = moves[i];
+            position.make(m, mColor);
+            double reply = 0;
+            boolean searched = false;
+            if (lateReductions && ordering && i >= LATE_MOVES && remaining > 2) {
+                reduced++;
+                if (side == COMPUTER) {
+                    reply = chooseAB(!side,alpha,Math.min(alpha + ZERO_WINDOW, beta),depth + 1);
+                    searched = reply <= alpha;
+                } else {
+                    reply = chooseAB(!side,Math.max(beta - ZERO_WINDOW, alpha),beta,depth + 1);
+                    searched = reply >= beta;
+                }
+                reduced--;
+            }
+            if (searched || timeUp) {
+                // The shallower search showed the move is no better.
+            } else if (i == 0 || !pvs) {
+                reply = chooseAB(!side,alpha,beta,depth + 1);
+            } else if (side == COMPUTER) {
+                // Only a reply that reaches the top of the zero window is a
+                // bound; anything strictly inside it is exact.
+                double zero = Math.min(alpha + ZERO_WINDOW, beta);
+                reply = chooseAB(!side,alpha,zero,depth + 1);
+                if (reply >= zero && zero < beta && !timeUp) {
+                    researches++;
+                    reply = chooseAB(!side,alpha,beta,depth + 1);
+                }
+            } else {
+                double zero = Math.max(beta - ZERO_WINDOW, alpha);
+                reply = chooseAB(!side,zero,beta,depth + 1);
+                if (reply <= zero && zero > alpha && !timeUp) {
+                    researches++;
+                    reply = chooseAB(!side,alpha,beta,depth + 1);
+                }
+            }
+            position.undo(m, mColor);
+            if (timeUp) {
+                return best;
+            }
+            if ((side == COMPUTER) && (reply > best)) {
+                bestMove = m;
+                best = reply;
+                alpha = reply;
+            } else if ((side == HUMAN) && (reply < best)) {
+                bestMove = m;
+                best = reply;
+                beta = reply;
+            }
+            if (alpha >= beta) {
+                if (ordering) {
+                    recordCutoff(m, mColor, depth);
+                }
+                tried = i + 1;
+                break;
+            }
+        }
+        if (stats != null && count > 0) {
+            stats.expanded(tried, alpha >= beta);
+        }
+        if (table != null) {
+            int flag = TranspositionTable.EXACT;
+            if (best <= alphaOrig) {
+                flag = TranspositionTable.UPPER;
+            } else if (best >= betaOrig) {
+                flag = TranspositionTable.LOWER;
+            }
+            table.store(key, symmetry, remaining, flag, best / scale, bestMove);
+        }
+        bestMoves[depth] = bestMove;
+        return best;
+    }
+    // Searches the position with the side to move passing, NULL_REDUCTION
+    // plies shallower than usual, within alpha..beta.
+    private double passes(boolean side, double alpha, double beta, int depth) {
+        int savedPly = nullPly;
+        nullPly = depth;
+        reduced += NULL_REDUCTION;
+        double reply = chooseAB(!side,alpha,beta,depth + 1);
+        reduced -= NULL_REDUCTION;
+        nullPly = savedPly;
+        return reply;
+    }
+    // Root search spread over the pool, Young Brothers Wait style.  The first
+    // move (the hash move, if any) is searched here to establish a bound;
+    // the remaining moves are then searched in parallel by helpers, each on
+    // its own copy of the position, starting from the best score proven so
+    // far.  A helper's result only counts if it beats the bound it started
+    // from, since a fail-hard search gives nothing more than that bound.
+    private Best chooseABparallel(double alpha, double beta) {
+        if (isWinningGrid(oppColor) || isWinningGrid(color)) {
+            return searchSerial(alpha, beta);
+        }
+        Best myBest = new Best();
+        myBest.score = alpha;
+        int symmetry = table != null && symmetries ? position.symmetry(color) : 0;
+        long key = position.key(color, symmetry);
+        final int[] moves = moveList(0);
+        int count = position.generate(color, moves);
+        nodes++;
+        if (stats != null) {
+            stats.node(0);
+        }
+        if (ordering) {
+            int hashMove = previousBest;
+            if (table != null && table.probe(key, symmetry, hit) && hit.move != 0) {
+                hashMove = hit.move;
+            }
+            orderMoves(moves, count, color, 0, hashMove);
+        }
+        if (count == 0) {
             return myBest;
         }
-        if (isWinningGrid(color,myGraph)) {
-            myBest.score = BESTSCORE * Math.pow(REDUCTION,depth - 1);
+        int bestMove = 0;
+        position.make(moves[0], color);
+        double first = chooseAB(HUMAN,alpha,beta,1);
+        position.undo(moves[0], color);
+        if (timeUp) {
             return myBest;
         }
-        if (depth >= this.maxDepth) {
-            myBest.score = evaluateBoard(myGraph,oppGraph) * Math.pow(REDUCTION,depth - 1);
+        if (first > myBest.score) {
+            bestMove = moves[0];
+            myBest.score = first;
+        }
+        final AtomicLong bound = new AtomicLong(Double.doubleToLongBits(myBest.score));
+        final AtomicBoolean aborted = new AtomicBoolean(false);
+        final AtomicLong helperNodes = new AtomicLong();
+        final AtomicLong helperResearches = new AtomicLong();
+        final double ceiling = beta;
+        final double[] scores = new double[count];
+        final boolean[] proven = new boolean[count];
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int i = 1; i < count && myBest.score < beta; i++) {
+            final int index = i;
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    MachinePlayer helper = helpers.poll();
+                    if (helper == null) {
+                        helper = new MachinePlayer(MachinePlayer.this);
+                    }
+                    helper.prepare(MachinePlayer.this);
+                    double floor = Double.longBitsToDouble(bound.get());
+                    helper.position.make(moves[index], color);
+                    double reply = floor;
+                    if (floor < ceiling) {
+                        reply = helper.chooseAB(HUMAN,floor,ceiling,1);
+                    }
+                    helperNodes.addAndGet(helper.nodes);
+                    helperResearches.addAndGet(helper.researches);
+                    if (helper.stats != null) {
+                        stats.add(helper.stats);
+                    }
+                    if (helper.timeUp) {
+                        aborted.set(true);
+                    } else if (reply > floor) {
+                        scores[index] = reply;
+                        proven[index] = true;
+                        raise(bound, reply);
+                    }
+                    helpers.add(helper);
+                    return null;
+                }
+            });
+        }
+        for (Future<Object> done : pool.invokeAll(tasks)) {
+            try {
+                done.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                aborted.set(true);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        nodes += helperNodes.get();
+        researches += helperResearches.get();
+        if (aborted.get()) {
+            timeUp = true;
             return myBest;
         }
-        if (side == COMPUTER) {
-            myBest.score = alpha;
-        } else {
-            myBest.score = beta;
-        }
-        moves = getMoves(mColor);
-        for (Move m: moves) {
-            makeMove(m,mColor);
-            reply = chooseAB(!side,alpha,beta,depth + 1);
-            undoMove(m,mColor);
-            if ((side == COMPUTER) && (reply.score > myBest.score)) {
-                myBest.move = m;
-                myBest.score = reply.score;
-                alpha = reply.score;
-            } else if ((side == HUMAN) && (reply.score < myBest.score)) {
-                myBest.move = m;
-                myBest.score = reply.score;
-                beta = reply.score;
+        for (int i = 1; i < count; i++) {
+            if (proven[i] && scores[i] > myBest.score) {
+                bestMove = moves[i];
+                myBest.score = scores[i];
             }
-            if (alpha >= beta) {
-                return myBest;
+        }
+        if (stats != null) {
+            stats.expanded(tasks.size() + 1, myBest.score >= beta);
+        }
+        if (table != null) {
+            int flag = TranspositionTable.EXACT;
+            if (myBest.score <= alpha) {
+                flag = TranspositionTable.UPPER;
+            } else if (myBest.score >= beta) {
+                flag = TranspositionTable.LOWER;
             }
+            table.store(key, symmetry, this.maxDepth, flag,
+                        myBest.score / Math.pow(REDUCTION, -1), bestMove);
+        }
+        if (bestMove != 0) {
+            myBest.move = Position.unpack(bestMove);
         }
         return myBest;
     }
-    private Move chooseABmove() {
-        /*if (myCount == 0) {
-            Move m;
-            if(color == BLACK) {
-                m = new Move(4,7);
+    // Raises the shared bound to score, unless another helper has already
+    // raised it further.
+    private static void raise(AtomicLong bound, double score) {
+        long current = bound.get();
+        while (score > Double.longBitsToDouble(current)
+               && !bound.compareAndSet(current, Double.doubleToLongBits(score))) {
+            current = bound.get();
+        }
+    }
+    // Searches the current position to maxDepth for this player, within the
+    // window alpha..beta.
+    private Best searchRoot(double alpha, double beta) {
+        if (threads > 1 && pool != null) {
+            return chooseABparallel(alpha, beta);
+        }
+        return searchSerial(alpha, beta);
+    }
+    private Best searchSerial(double alpha, double beta) {
+        Best myBest = new Best();
+        myBest.score = chooseAB(COMPUTER,alpha,beta,0);
+        if (bestMoves[0] != 0) {
+            myBest.move = Position.unpack(bestMoves[0]);
+        }
+        return myBest;
+    }
+    // Searches the root in a window of ASPIRATION either side of guess.  If
+    // the score falls outside, that side of the window is opened up fully
+    // and the root searched again.
+    private Best searchAspirated(double guess) {
+        double alpha = Math.max(-BESTSCORE, guess - ASPIRATION);
+        double beta = Math.min(BESTSCORE, guess + ASPIRATION);
+        while (true) {
+            Best b = searchRoot(alpha, beta);
+            if (timeUp) {
+                return b;
+            }
+            if (b.score <= alpha && alpha > -BESTSCORE) {
+                failLows++;
+                alpha = -BESTSCORE;
+            } else if (b.score >= beta && beta < BESTSCORE) {
+                failHighs++;
+                beta = BESTSCORE;
             } else {
-                m = new Move(7,4);
+                return b;
             }
-            return m;
-        
-        }*//* else if (myCount == 1) {
-            Move m;
-            if(color == BLACK) {
-                m = new Move(0,3);
+        }
+    }
+    // Starts a background search of the opponent's move, on a helper with its
+    // own copy of the position, unless pondering is off or the game is over.
+    private void startPondering() {
+        if (!pondering || monteCarlo || table == null
+            || position.hasNetwork(color) || position.hasNetwork(oppColor)) {
+            return;
+        }
+        if (ponderer == null) {
+            ponderer = new MachinePlayer(this);
+        }
+        final MachinePlayer helper = ponderer;
+        helper.prepare(this);
+        helper.stats = null;
+        helper.newSearch();
+        helper.deadline = 0;
+        helper.halted = false;
+        ponderThread = new Thread(new Runnable() {
+            public void run() {
+                helper.ponder();
+            }
+        }, "ponder");
+        ponderThread.setDaemon(true);
+        ponderThread.start();
+    }
+    // Stops the background search, if any, and waits for it to finish.
+    private void stopPondering() {
+        if (ponderThread == null) {
+            return;
+        }
+        ponderer.halted = true;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                ponderThread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        ponderThread = null;
+    }
+    // Searches the position with the opponent to move, one ply deeper at a
+    // time, until halted or a forced result is found.
+    private void ponder() {
+        for (int d = 1; d <= MAX_DEPTH; d++) {
+            maxDepth = d;
+            double score = chooseAB(HUMAN,-BESTSCORE,BESTSCORE,0);
+            if (timeUp) break;
+            if (Math.abs(score) >= BESTSCORE * Math.pow(REDUCTION, d)) break;
+        }
+    }
+    // Clears the killer moves and ages the history table before a search.
+    private void newSearch() {
+        nodes = 0;
+        lastScore = 0;
+        if (stats != null) {
+            stats.reset();
+        }
+        depthReached = 0;
+        researches = 0;
+        failHighs = 0;
+        failLows = 0;
+        previousBest = 0;
+        for (int[] k : killers) {
+            k[0] = 0;
+            k[1] = 0;
+        }
+        for (int[] h : history) {
+            for (int i = 0; i < h.length; i++) {
+                h[i] >>= 1;
+            }
+        }
+    }
+    // Sorts the first count moves for searching at the given ply: the hash
+    // move, then the two killer moves of the ply, then the rest by history
+    // score.  Moves that tie keep the order they were generated in.
+    private void orderMoves(int[] moves, int count, int mColor, int depth, int hashMove) {
+        int[] killer = killers[Math.min(depth, MAX_DEPTH)];
+        for (int i = 0; i < count; i++) {
+            int m = moves[i];
+            int score;
+            if (m == hashMove) {
+                score = Integer.MAX_VALUE;
+            } else if (m == killer[0]) {
+                score = Integer.MAX_VALUE - 1;
+            } else if (m == killer[1]) {
+                score = Integer.MAX_VALUE - 2;
             } else {
-                m = new Move(3,0);
+                score = history[mColor][m & 0xFFF];
             }
-            return m;
-        }*/
-        Best b = chooseAB(COMPUTER,-BESTSCORE,BESTSCORE,0);
-        return b.move;
+            order[i] = (-(long) score << 24) | ((long) i << 14) | m;
+        }
+        Arrays.sort(order, 0, count);
+        for (int i = 0; i < count; i++) {
+            moves[i] = (int) (order[i] & 0x3FFF);
+        }
+    }
+    // Remembers m, which caused a beta cutoff at the given ply, as a killer
+    // move and credits it in the history table.
+    private void recordCutoff(int m, int mColor, int depth) {
+        int[] killer = killers[Math.min(depth, MAX_DEPTH)];
+        if (killer[0] != m) {
+            killer[1] = killer[0];
+            killer[0] = m;
+        }
+        int remaining = Math.max(1, this.maxDepth - depth);
+        int[] h = history[mColor];
+        h[m & 0xFFF] += remaining * remaining;
+        if (h[m & 0xFFF] > (1 << 24)) {
+            for (int i = 0; i < h.length; i++) {
+                h[i] >>= 1;
+            }
+        }
+    }
+    private Move chooseMonteCarloMove() {
+        MonteCarloSearch search = new MonteCarloSearch(position, color, generator.nextLong());
+        long deadline = 0;
+        long budget = 0;
+        if (timeLimit > 0) {
+            deadline = System.currentTimeMillis() + timeLimit;
+        } else {
+            budget = PLAYOUTS;
+        }
+        int move = search.search(pool, threads, deadline, budget);
+        nodes = search.playouts();
+        depthReached = search.depth();
+        lastScore = 2 * search.score() - 1;
+        if (move == 0) {
+            // No move was chosen (the game is already over): play any legal
+            // move rather than none.
+            Move[] moves = getMoves(color);
+            return moves.length > 0 ? moves[0] : null;
+        }
+        return Position.unpack(move);
+    }
+    private Move chooseABmove() {
+        Move bestMove = null;
+        if (timeLimit <= 0 && !pvs) {
+            maxDepth = searchDepth;
+            Best b = searchRoot(-BESTSCORE, BESTSCORE);
+            bestMove = b.move;
+            lastScore = b.score;
+            depthReached = maxDepth;
+        } else {
+            // Without a time limit, principal variation search still deepens
+            // one ply at a time up to searchDepth, so each depth starts from
+            // the previous one's score and hash moves.
+            int lastDepth = MAX_DEPTH;
+            if (timeLimit <= 0) {
+                lastDepth = searchDepth;
+            }
+            long start = System.currentTimeMillis();
+            double score = 0;
+            for (int d = 1; d <= lastDepth; d++) {
+                // The first iteration always runs to completion, so there is
+                // a move to play however small the budget.
+                if (d > 1 && timeLimit > 0) {
+                    deadline = start + timeLimit;
+                    if (System.currentTimeMillis() >= deadline) break;
+                }
+                maxDepth = d;
+                timeUp = false;
+                IterationEvent event = new IterationEvent();
+                event.begin();
+                long before = nodes;
+                int highsBefore = failHighs;
+                int lowsBefore = failLows;
+                Best b;
+                if (pvs && d > 1) {
+                    b = searchAspirated(score);
+                } else {
+                    b = searchRoot(-BESTSCORE, BESTSCORE);
+                }
+                event.end();
+                if (event.shouldCommit()) {
+                    event.depth = d;
+                    event.nodes = nodes - before;
+                    event.score = b.score;
+                    event.completed = !timeUp;
+                    event.failHighs = failHighs - highsBefore;
+                    event.failLows = failLows - lowsBefore;
+                    event.commit();
+                }
+                if (timeUp) break;
+                if (b.move != null) {
+                    bestMove = b.move;
+                    previousBest = Position.pack(b.move);
+                }
+                score = b.score;
+                lastScore = score;
+                depthReached = d;
+                // Stop once the search has found a forced win or loss.
+                if (Math.abs(b.score) >= BESTSCORE * Math.pow(REDUCTION, d)) break;
+            }
+            deadline = 0;
+            timeUp = false;
+        }
+        if (bestMove == null) {
+            // Every move loses at once (or the game is already over): play
+            // any legal move rather than none.
+            Move[] moves = getMoves(color);
+            if (moves.length > 0) {
+                bestMove = moves[0];
+            }
+        }
+        return bestMove;
     }
                         
                 
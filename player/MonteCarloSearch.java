@@ -0,0 +1,340 @@
+/* MonteCarloSearch.java */
+
+package player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  Monte Carlo tree search, an alternative to MachinePlayer's alpha-beta
+ *  search for when the edge-count evaluation says too little.
+ *
+ *  Each iteration walks down the tree from the root, picking moves by UCT,
+ *  until it reaches a position not yet expanded.  It then plays random legal
+ *  moves to the end of the game (or MAX_PLAYOUT plies, after which the edge
+ *  counts decide how likely each side was to win) and credits the result to
+ *  every node on the way.  A leaf is expanded, all moves at once, the second
+ *  time it is reached.  Positions where the last move completed a network
+ *  are terminal and need no playout; a side that can win at once always
+ *  does.
+ *
+ *  Several threads may share the tree.  A thread that walks through a node
+ *  counts VIRTUAL_LOSS lost visits there until its result comes back, which
+ *  steers the other threads onto different lines.  Playouts allocate
+ *  nothing: each thread has its own position, move list and random number
+ *  generator.  The tree stops growing at MAX_NODES nodes.
+ */
+class MonteCarloSearch {
+    static final double EXPLORATION = 1.0;
+    static final int VIRTUAL_LOSS = 3;
+    static final int MAX_PLAYOUT = 8;
+    static final int MAX_NODES = 1 << 18;
+    static final int MAX_PATH = 256;
+    // How far the edge-count lead of an unfinished playout is trusted.
+    static final double SCALE = 2.0;
+
+    // Node states, for the color that made the move into the node.
+    static final int UNKNOWN = 0;
+    static final int OPEN = 1;
+    static final int WON = 2;
+    static final int LOST = 3;
+
+    /**
+     *  A position in the tree, reached by "move" of color "mover".  wins
+     *  counts playouts through it that mover won (halves for draws).
+     */
+    static final class Node {
+        final int move;
+        final int mover;
+        Node[] children;
+        volatile int visits;
+        volatile double wins;
+        volatile int state;
+
+        Node(int move, int mover) {
+            this.move = move;
+            this.mover = mover;
+        }
+
+        synchronized void enter() {
+            visits += VIRTUAL_LOSS;
+        }
+
+        // Replaces an iteration's virtual loss with its real result.
+        synchronized void leave(double won) {
+            visits += 1 - VIRTUAL_LOSS;
+            wins += won;
+        }
+    }
+
+    /**
+     *  The private state of one search thread.
+     */
+    private final class Worker implements Callable<Object> {
+        final Position position = new Position();
+        final int[] moves = new int[Position.MAX_MOVES];
+        final Node[] path = new Node[MAX_PATH];
+        long seed;
+
+        Worker(long seed) {
+            this.seed = seed == 0 ? 1 : seed;
+        }
+
+        public Object call() {
+            long count = 0;
+            while (true) {
+                // The clock is first read after some iterations, so the root
+                // is expanded however small the budget.
+                if (count > 0 && (count & 15) == 0 && finished()) break;
+                iterate(this);
+                count++;
+            }
+            return null;
+        }
+
+        // Returns a random number from 0 to n - 1 (xorshift).
+        int next(int n) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return (int) ((seed >>> 1) % n);
+        }
+    }
+
+    private final Position root;
+    private final int mColor;
+    private final Node tree;
+    private final AtomicInteger size;
+    private final AtomicLong playouts;
+    private final long seed;
+    private long deadline;
+    private long budget;
+    private volatile int depth;
+    // True if search() found a move that wins at once.
+    private boolean won;
+
+    // Creates a search of position with mColor to move.
+    MonteCarloSearch(Position position, int mColor, long seed) {
+        root = new Position(position);
+        this.mColor = mColor;
+        this.seed = seed;
+        tree = new Node(0, 1 - mColor);
+        tree.state = OPEN;
+        size = new AtomicInteger(1);
+        playouts = new AtomicLong();
+    }
+
+    // Searches until the clock passes deadline (if not 0) or "budget"
+    // playouts have been run, on "threads" threads of pool (or the calling
+    // thread alone if pool is null), and returns the packed move with the
+    // most visits, or 0 if there is no legal move.
+    int search(ForkJoinPool pool, int threads, long deadline, long budget) {
+        this.deadline = deadline;
+        this.budget = budget;
+        int win = immediateWin();
+        won = win != 0;
+        if (won) {
+            return win;
+        }
+        if (pool == null || threads <= 1) {
+            new Worker(seed).call();
+        } else {
+            List<Callable<Object>> workers = new ArrayList<Callable<Object>>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(new Worker(seed + 0x9E3779B97F4A7C15L * (i + 1)));
+            }
+            for (Future<Object> done : pool.invokeAll(workers)) {
+                try {
+                    done.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        }
+        Node best = mostVisited();
+        return best == null ? 0 : best.move;
+    }
+
+    // The number of playouts run (terminal positions reached in the tree
+    // count as playouts of no plies).
+    long playouts() {
+        return playouts.get();
+    }
+
+    // The deepest the tree was walked.
+    int depth() {
+        return depth;
+    }
+
+    // The share of playouts through the chosen move that it won, or 1 if it
+    // wins at once.
+    double score() {
+        if (won) return 1;
+        Node best = mostVisited();
+        return best == null || best.visits == 0 ? 0 : best.wins / best.visits;
+    }
+
+    private boolean finished() {
+        if (budget > 0 && playouts.get() >= budget) return true;
+        return deadline != 0 && System.currentTimeMillis() >= deadline;
+    }
+
+    // Returns a root move that completes a network without completing the
+    // opponent's, or 0 if there is none.
+    private int immediateWin() {
+        int[] moves = new int[Position.MAX_MOVES];
+        Position position = new Position(root);
+        int count = position.generate(mColor, moves);
+        for (int i = 0; i < count; i++) {
+            position.make(moves[i], mColor);
+            boolean won = position.winner(mColor) == mColor;
+            position.undo(moves[i], mColor);
+            if (won) return moves[i];
+        }
+        return 0;
+    }
+
+    private Node mostVisited() {
+        Node[] children = tree.children;
+        if (children == null) return null;
+        Node best = null;
+        for (Node child : children) {
+            if (best == null || child.visits > best.visits) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    // Runs one iteration: selection, expansion, playout and backup.
+    private void iterate(Worker w) {
+        Position p = w.position;
+        p.copy(root);
+        Node node = tree;
+        node.enter();
+        Node[] path = w.path;
+        int length = 0;
+        path[length++] = node;
+        int toMove = mColor;
+        double white;
+        while (true) {
+            if (node.state == WON || node.state == LOST) {
+                boolean moverWon = node.state == WON;
+                white = (node.mover == Position.WHITE) == moverWon ? 1 : 0;
+                break;
+            }
+            Node[] children = node.children;
+            if (children == null) {
+                children = expand(node, p, toMove, w.moves);
+            }
+            if (children == null || length == MAX_PATH) {
+                white = playout(w, p, toMove);
+                break;
+            }
+            if (children.length == 0) {
+                white = 0.5;
+                break;
+            }
+            node = select(node, children);
+            p.play(node.move, toMove);
+            if (node.state == UNKNOWN) {
+                node.state = judge(p, toMove);
+            }
+            path[length++] = node;
+            toMove = 1 - toMove;
+        }
+        playouts.incrementAndGet();
+        if (length > depth) {
+            depth = length - 1;
+        }
+        for (int i = 0; i < length; i++) {
+            Node n = path[i];
+            n.leave(n.mover == Position.WHITE ? white : 1 - white);
+        }
+    }
+
+    // Expands node, with toMove to move in p, if it has been visited before
+    // (the root always is) and the tree has room.  Returns its children, or
+    // null if it is left a leaf.
+    private Node[] expand(Node node, Position p, int toMove, int[] moves) {
+        if (node != tree && node.visits <= VIRTUAL_LOSS) return null;
+        synchronized (node) {
+            if (node.children == null) {
+                int count = p.generate(toMove, moves);
+                if (size.addAndGet(count) > MAX_NODES) {
+                    size.addAndGet(-count);
+                    return null;
+                }
+                Node[] children = new Node[count];
+                for (int i = 0; i < count; i++) {
+                    children[i] = new Node(moves[i], toMove);
+                }
+                node.children = children;
+            }
+            return node.children;
+        }
+    }
+
+    // Picks the child to walk through by UCT, a child known to win first,
+    // and charges it a virtual loss.
+    private Node select(Node parent, Node[] children) {
+        synchronized (parent) {
+            Node best = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            double log = Math.log(Math.max(1, parent.visits));
+            for (Node child : children) {
+                int visits = child.visits;
+                double value;
+                if (child.state == WON) {
+                    best = child;
+                    break;
+                } else if (visits == 0) {
+                    value = Double.POSITIVE_INFINITY;
+                } else {
+                    value = child.wins / visits + EXPLORATION * Math.sqrt(log / visits);
+                }
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                    if (visits == 0) break;
+                }
+            }
+            best.enter();
+            return best;
+        }
+    }
+
+    // The state of p for mover, who has just moved.
+    private static int judge(Position p, int mover) {
+        int winner = p.winner(mover);
+        if (winner < 0) return OPEN;
+        return winner == mover ? WON : LOST;
+    }
+
+    // Plays random moves from p, toMove to move, and returns white's share
+    // of the result: 1 for a white win, 0 for a black one, and for a game
+    // still going after MAX_PLAYOUT plies a guess from the edge counts.
+    private double playout(Worker w, Position p, int toMove) {
+        for (int ply = 0; ply < MAX_PLAYOUT; ply++) {
+            int count = p.generate(toMove, w.moves);
+            if (count == 0) return 0.5;
+            p.play(w.moves[w.next(count)], toMove);
+            int state = judge(p, toMove);
+            if (state != OPEN) {
+                return (toMove == Position.WHITE) == (state == WON) ? 1 : 0;
+            }
+            toMove = 1 - toMove;
+        }
+        double lead = p.edgeCount(Position.WHITE) - p.edgeCount(Position.BLACK);
+        return 1 / (1 + Math.exp(-lead / SCALE));
+    }
+}
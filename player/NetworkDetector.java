@@ -0,0 +1,103 @@
+/* NetworkDetector.java */
+
+package player;
+
+/**
+ *  Decides whether a color has a network.  The chips of that color are
+ *  numbered by their index in the position (0-9); the line-of-sight links
+ *  between them are found once per call, four ray lookups per chip, and
+ *  stored as 10-bit masks per line.  The path search then runs entirely on
+ *  those masks.  A detector owns its scratch arrays, so it allocates nothing
+ *  after construction, but it must not be shared between threads.
+ */
+class NetworkDetector {
+    static final int CHIPS = Position.CHIPS;
+
+    // along[i][line] has bit j set if chips i and j see each other along
+    // that line (0-3).  links[i] is the union over all four lines.
+    private final int[][] along;
+    private final int[] links;
+    private int start;
+    private int finish;
+
+    NetworkDetector() {
+        along = new int[CHIPS][4];
+        links = new int[CHIPS];
+    }
+
+    // Returns true if mColor has a path of at least six chips from one of its
+    // goal areas to the other that never passes straight through a chip and
+    // never touches a goal area in the middle.
+    boolean hasNetwork(Position position, int mColor) {
+        long own = position.bits[mColor];
+        if (!possible(own, mColor)) return false;
+        long startCells = own & Position.START[mColor];
+        long finishCells = own & Position.FINISH[mColor];
+
+        int count = position.counts[mColor];
+        start = 0;
+        finish = 0;
+        for (int i = 0; i < count; i++) {
+            along[i][0] = 0;
+            along[i][1] = 0;
+            along[i][2] = 0;
+            along[i][3] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            int cell = position.chips[mColor][i];
+            if ((startCells & Position.bit(cell)) != 0) start |= 1 << i;
+            if ((finishCells & Position.bit(cell)) != 0) finish |= 1 << i;
+            for (int line = 0; line < 4; line++) {
+                int other = position.connection(cell, line, mColor);
+                if (other >= 0) {
+                    int j = position.index[other];
+                    along[i][line] |= 1 << j;
+                    along[j][line] |= 1 << i;
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            links[i] = along[i][0] | along[i][1] | along[i][2] | along[i][3];
+        }
+
+        for (int s = start; s != 0; s &= s - 1) {
+            int chip = Integer.numberOfTrailingZeros(s);
+            if (extend(chip, 1 << chip, 0, -1)) return true;
+        }
+        return false;
+    }
+
+    // Returns false if the chips "own" of mColor are too few, or too few of
+    // them are in the right places, to make a network however they connect.
+    static boolean possible(long own, int mColor) {
+        long startCells = own & Position.START[mColor];
+        long finishCells = own & Position.FINISH[mColor];
+        int total = Long.bitCount(own);
+        if (total < 6) return false;
+        if (startCells == 0 || finishCells == 0) return false;
+        return total - Long.bitCount(startCells) - Long.bitCount(finishCells) >= 4;
+    }
+
+    // Continues a path that has reached chip after "depth" links, the last
+    // of them along "line" (-1 at the start).
+    private boolean extend(int chip, int visited, int depth, int line) {
+        int options = links[chip] & ~visited & ~start;
+        if (line >= 0) {
+            options &= ~along[chip][line];
+        }
+        if (depth + 1 < 5) {
+            options &= ~finish;
+        } else if ((options & finish) != 0) {
+            return true;
+        }
+        for (int o = options & ~finish; o != 0; o &= o - 1) {
+            int next = Integer.numberOfTrailingZeros(o);
+            int nextLine = 0;
+            while ((along[chip][nextLine] & (1 << next)) == 0) {
+                nextLine++;
+            }
+            if (extend(next, visited | (1 << next), depth + 1, nextLine)) return true;
+        }
+        return false;
+    }
+}
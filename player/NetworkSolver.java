@@ -0,0 +1,213 @@
+/* NetworkSolver.java */
+
+package player;
+
+/**
+ *  Solves "Network problems": can a color complete a network within a given
+ *  number of its own moves, whatever the opponent plays?  The answer is
+ *  exact, found by proof-number search over the tree of both sides' moves.
+ *
+ *  Each node carries a proof number (how many more leaves must be shown
+ *  won to prove it) and a disproof number (how many must be shown not won
+ *  to disprove it).  The search repeatedly descends to the most proving
+ *  leaf, expands it, and updates the numbers on the way back up, so it
+ *  spends its effort on the lines closest to settling the question.
+ *  The attacker's last move is never expanded: a node where it is left with
+ *  one move is proven at once if one of its moves wins, and disproven
+ *  otherwise.
+ *
+ *  A move that leaves both colors with a network loses for the side that
+ *  made it.
+ */
+class NetworkSolver {
+    static final int PROVEN = 1;
+    static final int DISPROVEN = 0;
+
+    static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    /**
+     *  A node of the proof tree.  "move" led to it from its parent; OR nodes
+     *  have the attacker to move, AND nodes the defender.
+     */
+    private static class Node {
+        final Node parent;
+        final int move;
+        final boolean or;
+        final int left;
+        int proof;
+        int disproof;
+        Node[] children;
+
+        Node(Node parent, int move, boolean or, int left) {
+            this.parent = parent;
+            this.move = move;
+            this.or = or;
+            this.left = left;
+            proof = 1;
+            disproof = 1;
+        }
+    }
+
+    private final Position position;
+    private final int attacker;
+    private final int defender;
+    private final int[][] moveLists;
+    private long nodes;
+    private int move;
+
+    // Creates a solver for attacker in a copy of the given position.
+    NetworkSolver(Position start, int attacker) {
+        position = new Position(start);
+        this.attacker = attacker;
+        this.defender = 1 - attacker;
+        moveLists = new int[2][Position.MAX_MOVES];
+    }
+
+    // Returns PROVEN if the attacker, to move, can complete a network within
+    // "moves" of its own moves against any defence, and DISPROVEN otherwise.
+    int solve(int moves) {
+        nodes = 0;
+        move = 0;
+        if (position.hasNetwork(defender)) return DISPROVEN;
+        if (position.hasNetwork(attacker)) return PROVEN;
+        if (moves <= 0) return DISPROVEN;
+        if (moves == 1) {
+            move = winningMove();
+            return move != 0 ? PROVEN : DISPROVEN;
+        }
+        Node root = new Node(null, 0, true, moves);
+        while (root.proof != 0 && root.disproof != 0) {
+            Node leaf = root;
+            while (leaf.children != null) {
+                leaf = select(leaf);
+                position.make(leaf.move, leaf.or ? defender : attacker);
+            }
+            expand(leaf);
+            for (Node n = leaf; ; n = n.parent) {
+                update(n);
+                if (n == root) break;
+                position.undo(n.move, n.or ? defender : attacker);
+            }
+        }
+        if (root.proof != 0) return DISPROVEN;
+        for (Node child : root.children) {
+            if (child.proof == 0) {
+                move = child.move;
+                break;
+            }
+        }
+        return PROVEN;
+    }
+
+    // The attacker's first move in the last network proven, or 0.
+    int move() {
+        return move;
+    }
+
+    // The number of positions visited by the last solve().
+    long nodes() {
+        return nodes;
+    }
+
+    // The child to descend into: the one with the smallest proof number
+    // below an OR node, the smallest disproof number below an AND node.
+    private static Node select(Node node) {
+        Node best = null;
+        for (Node child : node.children) {
+            if (best == null
+                || (node.or ? child.proof < best.proof : child.disproof < best.disproof)) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    private static void update(Node node) {
+        if (node.children == null) return;
+        int proof = node.or ? INFINITY : 0;
+        int disproof = node.or ? 0 : INFINITY;
+        for (Node child : node.children) {
+            if (node.or) {
+                proof = Math.min(proof, child.proof);
+                disproof = Math.min(INFINITY, disproof + child.disproof);
+            } else {
+                proof = Math.min(INFINITY, proof + child.proof);
+                disproof = Math.min(disproof, child.disproof);
+            }
+        }
+        node.proof = proof;
+        node.disproof = disproof;
+    }
+
+    // Adds a child for every legal move of the side to move at node, each
+    // settled at once if the move ends the game or, for an OR child with one
+    // move left, if the attacker can (or can't) win in one.  Stops early
+    // once a child settles node itself.
+    private void expand(Node node) {
+        int mColor = node.or ? attacker : defender;
+        int[] moves = moveLists[node.or ? 0 : 1];
+        int count = position.generate(mColor, moves);
+        Node[] children = new Node[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int m = moves[i];
+            position.make(m, mColor);
+            nodes++;
+            Node child;
+            if (node.or) {
+                child = new Node(node, m, false, node.left - 1);
+                int result = result(mColor);
+                if (result == PROVEN) {
+                    settle(child, true);
+                } else if (result == DISPROVEN || child.left == 0) {
+                    settle(child, false);
+                }
+            } else {
+                child = new Node(node, m, true, node.left);
+                int result = result(mColor);
+                if (result >= 0) {
+                    settle(child, result == PROVEN);
+                } else if (child.left == 1) {
+                    settle(child, winningMove() != 0);
+                }
+            }
+            position.undo(m, mColor);
+            children[n++] = child;
+            if (node.or ? child.proof == 0 : child.disproof == 0) break;
+        }
+        if (n < count) {
+            Node[] settled = new Node[n];
+            System.arraycopy(children, 0, settled, 0, n);
+            children = settled;
+        }
+        node.children = children;
+    }
+
+    private static void settle(Node node, boolean proven) {
+        node.proof = proven ? 0 : INFINITY;
+        node.disproof = proven ? INFINITY : 0;
+    }
+
+    // Decides the game just after mover's move: PROVEN if the attacker has
+    // won, DISPROVEN if the defender has, -1 if it goes on.
+    private int result(int mover) {
+        int winner = position.winner(mover);
+        if (winner < 0) return -1;
+        return winner == attacker ? PROVEN : DISPROVEN;
+    }
+
+    // Returns a move that wins for the attacker on the spot, or 0.
+    private int winningMove() {
+        int[] moves = moveLists[0];
+        int count = position.generate(attacker, moves);
+        for (int i = 0; i < count; i++) {
+            int m = moves[i];
+            position.make(m, attacker);
+            nodes++;
+            boolean won = result(attacker) == PROVEN;
+            position.undo(m, attacker);
+            if (won) return m;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,83 @@
+/* NodeCounter.java */
+
+package player;
+
+import java.util.Random;
+
+/**
+ *  Counts the positions MachinePlayer visits on a fixed, seeded set of
+ *  positions, with and without move ordering and principal variation
+ *  search, and prints the reductions.
+ *
+ *  Usage:  java player.NodeCounter [depth]
+ */
+public class NodeCounter {
+    static final int GAMES = 8;
+    static final int[] PLIES = {6, 12, 18, 24, 30};
+
+    // Plays random legal moves from the start with the given seed and returns
+    // the position after "plies" moves, or null if someone won on the way.
+    static Position randomPosition(long seed, int plies) {
+        Random random = new Random(seed);
+        Position position = new Position();
+        int mColor = MachinePlayer.WHITE;
+        for (int ply = 0; ply < plies; ply++) {
+            Move m;
+            do {
+                int x = random.nextInt(MachinePlayer.SIDE);
+                int y = random.nextInt(MachinePlayer.SIDE);
+                if (position.count(mColor) < Position.CHIPS) {
+                    m = new Move(x, y);
+                } else {
+                    int from = position.chip(mColor, random.nextInt(Position.CHIPS));
+                    m = new Move(x, y, Position.x(from), Position.y(from));
+                }
+            } while (!position.isLegal(m, mColor));
+            position.play(m, mColor);
+            if (position.winner(mColor) >= 0) {
+                return null;
+            }
+            mColor = 1 - mColor;
+        }
+        return position;
+    }
+
+    // Returns the nodes searched choosing a move in every position of the set.
+    static long count(Position[] positions, int depth, boolean ordering, boolean pvs) {
+        long total = 0;
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] == null) continue;
+            int mColor = (PLIES[i % PLIES.length] % 2 == 0) ? MachinePlayer.WHITE
+                                                           : MachinePlayer.BLACK;
+            MachinePlayer player = new MachinePlayer(mColor, depth, positions[i]);
+            player.setMoveOrdering(ordering);
+            player.setPrincipalVariation(pvs);
+            player.chooseMove();
+            total += player.getNodeCount();
+        }
+        return total;
+    }
+
+    public static void main(String[] args) {
+        int depth = 3;
+        if (args.length > 0) {
+            depth = Integer.parseInt(args[0]);
+        }
+        Position[] positions = new Position[GAMES * PLIES.length];
+        for (int g = 0; g < GAMES; g++) {
+            for (int p = 0; p < PLIES.length; p++) {
+                positions[g * PLIES.length + p] = randomPosition(g + 1, PLIES[p]);
+            }
+        }
+        long plain = count(positions, depth, false, false);
+        long ordered = count(positions, depth, true, false);
+        long principal = count(positions, depth, true, true);
+        System.out.println("Depth " + depth + ", " + positions.length + " positions");
+        System.out.println("Nodes without ordering: " + plain);
+        System.out.println("Nodes with ordering:    " + ordered + "  ("
+                           + Math.round(100.0 * (plain - ordered) / plain) + "% fewer)");
+        System.out.println("Nodes with ordering and PVS: " + principal + "  ("
+                           + Math.round(100.0 * (ordered - principal) / ordered)
+                           + "% fewer than ordering alone)");
+    }
+}
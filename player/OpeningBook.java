@@ -0,0 +1,223 @@
+/* OpeningBook.java */
+
+package player;
+
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *  A book of precomputed moves for the first plies of the game, read
+ *  through a memory-mapped file.  The file is mapped read-only, so every
+ *  JVM on a host that opens the same book shares its pages through the
+ *  operating system's page cache, and nothing is read until it is used.
+ *
+ *  File layout (big-endian): the int magic "NETB", the int version, the int
+ *  number of slots (a power of two) and the int number of entries, followed
+ *  by the slots.  A slot is the long Zobrist key of a position's canonical
+ *  image with the side to move (Position.symmetry() and key()) and the int
+ *  packed move to play there, as a move in that image; move 0 marks an
+ *  empty slot.  So one entry serves every image of a position (see
+ *  Symmetry), and only one of them is searched when the book is made.  A
+ *  key lives in slot (key & (slots - 1)) or, after a collision, in the next
+ *  empty slot after it.
+ *
+ *  Running this class generates a book.  For each color it plays the book
+ *  move at that color's turns and every legal reply at the opponent's, and
+ *  searches each position it reaches with that color to move.
+ *
+ *  Usage:  java player.OpeningBook file [plies] [depth]
+ */
+public class OpeningBook {
+    static final int MAGIC = 0x4E455442;
+    static final int VERSION = 2;
+    static final int HEADER = 16;
+    static final int SLOT = 12;
+
+    private final MappedByteBuffer buffer;
+    private final int mask;
+    private final int entries;
+
+    private OpeningBook(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC
+            || buffer.getInt(4) != VERSION) {
+            throw new IOException("not an opening book");
+        }
+        int slots = buffer.getInt(8);
+        if (Integer.bitCount(slots) != 1
+            || buffer.capacity() < HEADER + (long) slots * SLOT) {
+            throw new IOException("truncated opening book");
+        }
+        mask = slots - 1;
+        entries = buffer.getInt(12);
+    }
+
+    // Maps the book in the given file.
+    static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                               channel.size()));
+        }
+    }
+
+    // The book every MachinePlayer starts with: the file named by the system
+    // property "network.book", mapped once per JVM on first use.  null if the
+    // property is unset or the file can't be read.
+    static OpeningBook standard() {
+        return Standard.BOOK;
+    }
+
+    private static class Standard {
+        static final OpeningBook BOOK = load(System.getProperty("network.book"));
+
+        private static OpeningBook load(String file) {
+            if (file == null) return null;
+            try {
+                return open(Paths.get(file));
+            } catch (IOException e) {
+                System.err.println("Opening book " + file + " not loaded: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    int size() {
+        return entries;
+    }
+
+    // Returns the packed book move for position with mColor to move, or 0 if
+    // the position is not in the book.
+    int probe(Position position, int mColor) {
+        int s = position.symmetry(mColor);
+        return Symmetry.move(Symmetry.INVERSE[s], probe(position.key(mColor, s)));
+    }
+
+    // Returns the packed book move for the canonical image with the given
+    // key, or 0 if it is not in the book.
+    int probe(long key) {
+        for (int slot = (int) key & mask; ; slot = (slot + 1) & mask) {
+            int at = HEADER + slot * SLOT;
+            int move = buffer.getInt(at + 8);
+            if (move == 0) return 0;
+            if (buffer.getLong(at) == key) return move;
+        }
+    }
+
+    // Writes the given key-to-move entries to file as a book, with the table
+    // at most half full.
+    static void write(Map<Long, Integer> book, String file) throws IOException {
+        int slots = Integer.highestOneBit(Math.max(1, book.size()) * 2) * 2;
+        long[] keys = new long[slots];
+        int[] moves = new int[slots];
+        for (Map.Entry<Long, Integer> e : book.entrySet()) {
+            long key = e.getKey();
+            int slot = (int) key & (slots - 1);
+            while (moves[slot] != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            keys[slot] = key;
+            moves[slot] = e.getValue();
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(slots);
+            out.writeInt(book.size());
+            for (int i = 0; i < slots; i++) {
+                out.writeLong(keys[i]);
+                out.writeInt(moves[i]);
+            }
+        }
+    }
+
+    // Adds to book the moves mColor should play in the first "plies" plies,
+    // searched to the given depth.  Positions are expanded one ply at a time
+    // so that transpositions, and images of positions already reached, are
+    // only searched once.
+    static void generate(Map<Long, Integer> book, int mColor, int plies, int depth) {
+        List<Position> frontier = new ArrayList<Position>();
+        frontier.add(new Position());
+        int toMove = MachinePlayer.WHITE;
+        int[] moves = new int[Position.MAX_MOVES];
+        for (int ply = 0; ply < plies; ply++) {
+            List<Position> next = new ArrayList<Position>();
+            Set<Long> seen = new HashSet<Long>();
+            for (Position position : frontier) {
+                if (toMove == mColor) {
+                    int s = position.symmetry(mColor);
+                    long key = position.key(mColor, s);
+                    Integer stored = book.get(key);
+                    int move;
+                    if (stored == null) {
+                        MachinePlayer player = new MachinePlayer(mColor, depth, position);
+                        player.setOpeningBook(null);
+                        move = Position.pack(player.chooseMove());
+                        book.put(key, Symmetry.move(s, move));
+                    } else {
+                        move = Symmetry.move(Symmetry.INVERSE[s], stored);
+                    }
+                    Position child = new Position(position);
+                    child.play(move, mColor);
+                    if (seen.add(canonicalKey(child, 1 - mColor)) && !child.hasNetwork(mColor)) {
+                        next.add(child);
+                    }
+                } else {
+                    int count = position.generate(toMove, moves);
+                    for (int i = 0; i < count; i++) {
+                        Position child = new Position(position);
+                        child.play(moves[i], toMove);
+                        if (seen.add(canonicalKey(child, 1 - toMove))
+                            && !child.hasNetwork(toMove)) {
+                            next.add(child);
+                        }
+                    }
+                }
+            }
+            frontier = next;
+            toMove = 1 - toMove;
+        }
+    }
+
+    private static long canonicalKey(Position position, int mColor) {
+        return position.key(mColor, position.symmetry(mColor));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java player.OpeningBook file [plies] [depth]");
+            return;
+        }
+        int plies = 4;
+        int depth = 4;
+        if (args.length > 1) {
+            plies = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2) {
+            depth = Integer.parseInt(args[2]);
+        }
+        Map<Long, Integer> book = new LinkedHashMap<Long, Integer>();
+        long start = System.currentTimeMillis();
+        generate(book, MachinePlayer.WHITE, plies, depth);
+        generate(book, MachinePlayer.BLACK, plies, depth);
+        write(book, args[0]);
+        OpeningBook check = open(Paths.get(args[0]));
+        System.out.println(check.size() + " positions, " + plies + " plies, depth "
+                           + depth + ", " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
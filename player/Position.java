@@ -0,0 +1,505 @@
+/* Position.java */
+
+package player;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ *  A Network position stored as one 64-bit bitboard per color.  Bit
+ *  (x + 8 * y) of bits[c] is set when a chip of color c sits on square (x, y).
+ *  The chips of each color are also kept in the order they were added, since
+ *  the connection graph is built (and weighted) in that order.
+ */
+class Position {
+    static final int BLACK = MachinePlayer.BLACK;
+    static final int WHITE = MachinePlayer.WHITE;
+    static final int SIDE = MachinePlayer.SIDE;
+    static final int CHIPS = 10;
+    static final int CELLS = SIDE * SIDE;
+    static final int MAX_MOVES = CHIPS * 48;
+    // Moves the undo stack first makes room for.
+    static final int UNDO_DEPTH = 16;
+
+    static final long[] NEIGHBOURS = new long[CELLS];
+    static final long[] NEAR2 = new long[CELLS];
+    static final long[] LEGAL = new long[2];
+    static final long[] START = new long[2];
+    static final long[] FINISH = new long[2];
+
+    // Zobrist keys: one per (color, square), plus one per side to move.
+    static final long[][] ZOBRIST = new long[2][CELLS];
+    static final long[] TO_MOVE = new long[2];
+
+    static {
+        for (int x = 0; x < SIDE; x++) {
+            for (int y = 0; y < SIDE; y++) {
+                int c = cell(x, y);
+                for (int d = 0; d < 8; d++) {
+                    int i = x + Lines.DX[d];
+                    int j = y + Lines.DY[d];
+                    if (onBoard(i, j)) {
+                        NEIGHBOURS[c] |= bit(cell(i, j));
+                    }
+                }
+                boolean corner = (x == 0 || x == SIDE - 1) && (y == 0 || y == SIDE - 1);
+                if (!corner && x != 0 && x != SIDE - 1) {
+                    LEGAL[BLACK] |= bit(c);
+                }
+                if (!corner && y != 0 && y != SIDE - 1) {
+                    LEGAL[WHITE] |= bit(c);
+                }
+                if (y == 0) START[BLACK] |= bit(c);
+                if (y == SIDE - 1) FINISH[BLACK] |= bit(c);
+                if (x == 0) START[WHITE] |= bit(c);
+                if (x == SIDE - 1) FINISH[WHITE] |= bit(c);
+            }
+        }
+        for (int c = 0; c < CELLS; c++) {
+            for (long n = NEIGHBOURS[c]; n != 0; n &= n - 1) {
+                NEAR2[c] |= NEIGHBOURS[Long.numberOfTrailingZeros(n)];
+            }
+            NEAR2[c] = (NEAR2[c] | NEIGHBOURS[c]) & ~bit(c);
+        }
+        Random keys = new Random(0x4E6574776F726BL);
+        for (int c = 0; c < CELLS; c++) {
+            ZOBRIST[BLACK][c] = keys.nextLong();
+            ZOBRIST[WHITE][c] = keys.nextLong();
+        }
+        TO_MOVE[BLACK] = keys.nextLong();
+        TO_MOVE[WHITE] = keys.nextLong();
+        START[BLACK] &= LEGAL[BLACK];
+        FINISH[BLACK] &= LEGAL[BLACK];
+        START[WHITE] &= LEGAL[WHITE];
+        FINISH[WHITE] &= LEGAL[WHITE];
+    }
+
+    final long[] bits;
+    final int[][] chips;
+    final int[] counts;
+    final int[] index;
+    final Connections connections;
+    final NetworkDetector detector;
+    long key;
+    // images[s] is the key of the position's image under Symmetry s (so
+    // images[0] is key).
+    final long[] images;
+
+    // near[c][cell] counts the chips of color c around cell; crowded[c] marks
+    // the squares with two or more of them, and forbidden[c] the squares
+    // where a new chip of color c would complete a group of three.
+    final int[][] near;
+    final long[] crowded;
+    final long[] forbidden;
+
+    // The undo stack: for each of the last "ply" moves, not yet undone, the
+    // packed move, its color, the number of the chip it moved or added, the
+    // color's forbidden squares before it and the mark of the connection
+    // scores from before it.  undo() puts these back instead of working them
+    // out again.  Starts empty on a copy.  The arrays are made on the first
+    // make() and grown as needed; play() leaves nothing on the stack.
+    private int ply;
+    private int[] played;
+    private int[] movers;
+    private int[] movedChips;
+    private long[] forbiddens;
+    private int[] marks;
+
+    Position() {
+        bits = new long[2];
+        chips = new int[2][CHIPS];
+        counts = new int[2];
+        index = new int[CELLS];
+        connections = new Connections();
+        detector = new NetworkDetector();
+        key = 0;
+        images = new long[Symmetry.COUNT];
+        near = new int[2][CELLS];
+        crowded = new long[2];
+        forbidden = new long[2];
+    }
+
+    Position(Position other) {
+        bits = other.bits.clone();
+        chips = new int[2][];
+        chips[BLACK] = other.chips[BLACK].clone();
+        chips[WHITE] = other.chips[WHITE].clone();
+        counts = other.counts.clone();
+        index = other.index.clone();
+        connections = new Connections(other.connections);
+        detector = new NetworkDetector();
+        key = other.key;
+        images = other.images.clone();
+        near = new int[2][];
+        near[BLACK] = other.near[BLACK].clone();
+        near[WHITE] = other.near[WHITE].clone();
+        crowded = other.crowded.clone();
+        forbidden = other.forbidden.clone();
+    }
+
+    static int cell(int x, int y) {
+        return x + SIDE * y;
+    }
+
+    static int x(int cell) {
+        return cell % SIDE;
+    }
+
+    static int y(int cell) {
+        return cell / SIDE;
+    }
+
+    static long bit(int cell) {
+        return 1L << cell;
+    }
+
+    static boolean onBoard(int x, int y) {
+        return x >= 0 && x < SIDE && y >= 0 && y < SIDE;
+    }
+
+    // Packed moves: bits 0-5 hold the destination square, bits 6-11 the
+    // source square of a STEP and bits 12-13 the move kind.  0 is no move.
+    // The search works on packed moves only; Move objects are made at the
+    // Player interface.
+    static int add(int to) {
+        return to | (Move.ADD << 12);
+    }
+
+    static int step(int from, int to) {
+        return to | (from << 6) | (Move.STEP << 12);
+    }
+
+    static int to(int move) {
+        return move & 63;
+    }
+
+    static int from(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    static int kind(int move) {
+        return move >>> 12;
+    }
+
+    static int pack(Move m) {
+        if (m == null || m.moveKind == Move.QUIT) return 0;
+        if (m.moveKind == Move.STEP) {
+            return step(cell(m.x2, m.y2), cell(m.x1, m.y1));
+        }
+        return add(cell(m.x1, m.y1));
+    }
+
+    static Move unpack(int move) {
+        int to = to(move);
+        if (kind(move) == Move.STEP) {
+            int from = from(move);
+            return new Move(x(to), y(to), x(from), y(from));
+        } else if (kind(move) == Move.ADD) {
+            return new Move(x(to), y(to));
+        }
+        return new Move();
+    }
+
+    // Hash of the chips on the board with mColor to move.
+    long key(int mColor) {
+        return key ^ TO_MOVE[mColor];
+    }
+
+    // The key of the position's image under symmetry s, with mColor to move
+    // here (so its image's color to move there).
+    long key(int mColor, int s) {
+        return images[s] ^ TO_MOVE[Symmetry.color(s, mColor)];
+    }
+
+    // Returns the symmetry that takes the position, with mColor to move, to
+    // its canonical form: the image with the smallest key.
+    int symmetry(int mColor) {
+        int best = 0;
+        long smallest = key(mColor);
+        for (int s = 1; s < Symmetry.COUNT; s++) {
+            long k = key(mColor, s);
+            if (k < smallest) {
+                smallest = k;
+                best = s;
+            }
+        }
+        return best;
+    }
+
+    long occupied() {
+        return bits[BLACK] | bits[WHITE];
+    }
+
+    int count(int mColor) {
+        return counts[mColor];
+    }
+
+    int chip(int mColor, int i) {
+        return chips[mColor][i];
+    }
+
+    // Weighted count of mColor's connections, as Graph.getEdgeCount() would
+    // give for the graph built by MachinePlayer.generateGraph().
+    double edgeCount(int mColor) {
+        return connections.edgeCount(mColor);
+    }
+
+    // Returns true if mColor may play m here: the target is free and allowed
+    // for that color, the ADD/STEP phase matches the chip count, and the chip
+    // would not end up in a group of three or more adjacent chips.
+    boolean isLegal(Move m, int mColor) {
+        if (m.moveKind != Move.ADD && m.moveKind != Move.STEP) return false;
+        if (!onBoard(m.x1, m.y1)) return false;
+        if (m.moveKind == Move.STEP && !onBoard(m.x2, m.y2)) return false;
+        return isLegal(pack(m), mColor);
+    }
+
+    // Looks the answer up in the neighbour tables; the position is not
+    // touched, so any number of threads may ask at once.
+    boolean isLegal(int move, int mColor) {
+        int to = to(move);
+        if ((occupied() & bit(to)) != 0) return false;
+        if ((LEGAL[mColor] & bit(to)) == 0) return false;
+        if (kind(move) == Move.ADD) {
+            if (counts[mColor] >= CHIPS) return false;
+            return (forbidden[mColor] & bit(to)) == 0;
+        }
+        if (counts[mColor] < CHIPS) return false;
+        int from = from(move);
+        if ((bits[mColor] & bit(from)) == 0) return false;
+        return fits(to, mColor, from);
+    }
+
+    // Returns true if a chip of mColor on the empty square "to" would have at
+    // most one neighbour of its color, and that neighbour no other, once the
+    // chip on square "from" has been lifted.
+    private boolean fits(int to, int mColor, int from) {
+        if ((NEAR2[from] & bit(to)) == 0) {
+            return (forbidden[mColor] & bit(to)) == 0;
+        }
+        long lifted = bit(from);
+        int count = near[mColor][to];
+        if ((NEIGHBOURS[to] & lifted) != 0) count--;
+        if (count == 0) return true;
+        if (count > 1) return false;
+        int n = Long.numberOfTrailingZeros(NEIGHBOURS[to] & bits[mColor] & ~lifted);
+        int around = near[mColor][n];
+        if ((NEIGHBOURS[n] & lifted) != 0) around--;
+        return around == 0;
+    }
+
+    // Writes every legal move of mColor into moves and returns how many there
+    // are.  ADDs come in square order; STEPs chip by chip (in the order the
+    // chips were added), each in square order.  Lifting a chip can only free
+    // squares within two of it, so only those are checked one by one.
+    int generate(int mColor, int[] moves) {
+        int n = 0;
+        long targets = LEGAL[mColor] & ~occupied();
+        long open = targets & ~forbidden[mColor];
+        if (counts[mColor] < CHIPS) {
+            for (long t = open; t != 0; t &= t - 1) {
+                moves[n++] = add(Long.numberOfTrailingZeros(t));
+            }
+        } else {
+            for (int i = 0; i < CHIPS; i++) {
+                int from = chips[mColor][i];
+                long freed = targets & forbidden[mColor] & NEAR2[from];
+                for (long t = open | freed; t != 0; t &= t - 1) {
+                    int to = Long.numberOfTrailingZeros(t);
+                    if ((freed & bit(to)) == 0 || fits(to, mColor, from)) {
+                        moves[n++] = step(from, to);
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    void make(Move m, int mColor) {
+        make(pack(m), mColor);
+    }
+
+    void play(Move m, int mColor) {
+        play(pack(m), mColor);
+    }
+
+    void undo(Move m, int mColor) {
+        undo(pack(m), mColor);
+    }
+
+    // Plays the packed move for mColor.  Throws IllegalArgumentException,
+    // leaving the position as it was, if the move is neither an ADD nor a
+    // STEP (such as 0, a QUIT), its target square is taken or one mColor may
+    // never occupy, an ADD would be an eleventh chip, or a STEP has no mColor
+    // chip to move; other rules are isLegal()'s to check.
+    void make(int move, int mColor) {
+        make(move, mColor, true);
+    }
+
+    // Plays the packed move for good, as make() would, but keeps nothing to
+    // take it back with, so a position that only plays forward stays the
+    // same size.  Throws IllegalStateException if a move made with make()
+    // has not been taken back yet.
+    void play(int move, int mColor) {
+        if (ply != 0) {
+            throw new IllegalStateException("can't play " + unpack(move) + " for good with "
+                                            + ply + " moves still to take back");
+        }
+        make(move, mColor, false);
+    }
+
+    private void make(int move, int mColor, boolean undoable) {
+        int to = to(move);
+        int kind = kind(move);
+        boolean step = kind == Move.STEP;
+        int from = from(move);
+        if ((kind != Move.ADD && !step) || move != (step ? step(from, to) : add(to))
+            || (occupied() & bit(to)) != 0 || (LEGAL[mColor] & bit(to)) == 0
+            || (step ? (bits[mColor] & bit(from)) == 0 : counts[mColor] >= CHIPS)) {
+            throw new IllegalArgumentException("can't play " + unpack(move) + " for color "
+                                               + mColor);
+        }
+        if (undoable) {
+            push(move, mColor, step ? index[from] : counts[mColor]);
+        }
+        if (step) {
+            int pos = index[from];
+            lift(from, mColor);
+            place(to, mColor, pos);
+            connections.update(this, from);
+        } else {
+            place(to, mColor, counts[mColor]);
+            counts[mColor]++;
+        }
+        connections.update(this, to);
+        refresh(mColor);
+    }
+
+    // Saves what undo() needs to take back the packed move, about to be made
+    // for mColor with chip number pos.
+    private void push(int move, int mColor, int pos) {
+        if (played == null) {
+            played = new int[UNDO_DEPTH];
+            movers = new int[UNDO_DEPTH];
+            movedChips = new int[UNDO_DEPTH];
+            forbiddens = new long[UNDO_DEPTH];
+            marks = new int[UNDO_DEPTH];
+        } else if (ply == played.length) {
+            played = Arrays.copyOf(played, 2 * ply);
+            movers = Arrays.copyOf(movers, 2 * ply);
+            movedChips = Arrays.copyOf(movedChips, 2 * ply);
+            forbiddens = Arrays.copyOf(forbiddens, 2 * ply);
+            marks = Arrays.copyOf(marks, 2 * ply);
+        }
+        played[ply] = move;
+        movers[ply] = mColor;
+        movedChips[ply] = pos;
+        forbiddens[ply] = forbidden[mColor];
+        marks[ply] = connections.mark();
+        ply++;
+    }
+
+    // Takes back the packed move, which must be the last one made for
+    // mColor and not yet taken back; throws IllegalStateException if not.
+    void undo(int move, int mColor) {
+        if (ply == 0 || played[ply - 1] != move || movers[ply - 1] != mColor) {
+            throw new IllegalStateException("can't undo " + unpack(move) + " for color "
+                                            + mColor + ": it is not the last move made");
+        }
+        ply--;
+        int to = to(move);
+        lift(to, mColor);
+        if (kind(move) == Move.STEP) {
+            place(from(move), mColor, movedChips[ply]);
+        } else {
+            counts[mColor]--;
+        }
+        connections.rollback(marks[ply]);
+        forbidden[mColor] = forbiddens[ply];
+    }
+
+    // Puts chip number pos of mColor on the empty square cell.
+    private void place(int cell, int mColor, int pos) {
+        chips[mColor][pos] = cell;
+        index[cell] = pos;
+        bits[mColor] |= bit(cell);
+        key ^= ZOBRIST[mColor][cell];
+        for (int s = 0; s < Symmetry.COUNT; s++) {
+            images[s] ^= Symmetry.KEYS[s][mColor][cell];
+        }
+        int[] count = near[mColor];
+        for (long n = NEIGHBOURS[cell]; n != 0; n &= n - 1) {
+            int c = Long.numberOfTrailingZeros(n);
+            if (++count[c] == 2) {
+                crowded[mColor] |= bit(c);
+            }
+        }
+    }
+
+    // Takes the mColor chip off square cell.
+    private void lift(int cell, int mColor) {
+        bits[mColor] &= ~bit(cell);
+        key ^= ZOBRIST[mColor][cell];
+        for (int s = 0; s < Symmetry.COUNT; s++) {
+            images[s] ^= Symmetry.KEYS[s][mColor][cell];
+        }
+        int[] count = near[mColor];
+        for (long n = NEIGHBOURS[cell]; n != 0; n &= n - 1) {
+            int c = Long.numberOfTrailingZeros(n);
+            if (--count[c] == 1) {
+                crowded[mColor] &= ~bit(c);
+            }
+        }
+    }
+
+    // Recomputes the squares where mColor may not add a chip: those next to
+    // two of its chips, and those next to a chip that already has a
+    // neighbour of its color.
+    private void refresh(int mColor) {
+        long f = crowded[mColor];
+        for (long c = bits[mColor]; c != 0; c &= c - 1) {
+            int chip = Long.numberOfTrailingZeros(c);
+            if (near[mColor][chip] != 0) {
+                f |= NEIGHBOURS[chip];
+            }
+        }
+        forbidden[mColor] = f;
+    }
+
+    // Makes this position a copy of other.
+    void copy(Position other) {
+        System.arraycopy(other.bits, 0, bits, 0, 2);
+        System.arraycopy(other.chips[BLACK], 0, chips[BLACK], 0, CHIPS);
+        System.arraycopy(other.chips[WHITE], 0, chips[WHITE], 0, CHIPS);
+        System.arraycopy(other.counts, 0, counts, 0, 2);
+        System.arraycopy(other.index, 0, index, 0, CELLS);
+        connections.copy(other.connections);
+        key = other.key;
+        System.arraycopy(other.images, 0, images, 0, Symmetry.COUNT);
+        System.arraycopy(other.near[BLACK], 0, near[BLACK], 0, CELLS);
+        System.arraycopy(other.near[WHITE], 0, near[WHITE], 0, CELLS);
+        System.arraycopy(other.crowded, 0, crowded, 0, 2);
+        System.arraycopy(other.forbidden, 0, forbidden, 0, 2);
+        ply = 0;
+    }
+
+    // Returns the square of the mColor chip that cell can see in direction
+    // dir, or -1 if the first chip that way is an opponent's (or there is
+    // none).
+    int connection(int cell, int dir, int mColor) {
+        return Lines.partner(dir, cell, mColor, bits[mColor], bits[BLACK] | bits[WHITE]);
+    }
+
+    // Returns true if mColor has a network (see NetworkDetector).
+    boolean hasNetwork(int mColor) {
+        return detector.hasNetwork(this, mColor);
+    }
+
+    // Returns the color that has won just after mover's move, or -1 if the
+    // game goes on.  A move that completes both networks loses.
+    int winner(int mover) {
+        if (hasNetwork(1 - mover)) return 1 - mover;
+        if (hasNetwork(mover)) return mover;
+        return -1;
+    }
+}
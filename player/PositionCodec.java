@@ -0,0 +1,70 @@
+/* PositionCodec.java */
+
+package player;
+
+import java.nio.ByteBuffer;
+
+/**
+ *  The compact binary form of a position and the color to move, 2 bytes
+ *  plus 1 per chip (22 at most):
+ *
+ *      byte 0        black's chip count in bits 0-3, white's in bits 4-7
+ *      byte 1        the color to move (0 black, 1 white)
+ *      then          black's squares in the order its chips were added,
+ *                    then white's, one byte each (x + 8 * y)
+ *
+ *  The order matters because the evaluation weights connections by it.
+ *  Records need no separator: the first byte says how long each one is.
+ */
+class PositionCodec {
+    static final int MAX_BYTES = 2 + 2 * Position.CHIPS;
+
+    // Returns the length of the record that starts with byte "header".
+    static int length(byte header) {
+        return 2 + (header & 15) + ((header >> 4) & 15);
+    }
+
+    // Writes position, with mColor to move, at buffer's position.
+    static void write(Position position, int mColor, ByteBuffer buffer) {
+        int black = position.count(Position.BLACK);
+        int white = position.count(Position.WHITE);
+        buffer.put((byte) (black | white << 4));
+        buffer.put((byte) mColor);
+        for (int i = 0; i < black; i++) {
+            buffer.put((byte) position.chip(Position.BLACK, i));
+        }
+        for (int i = 0; i < white; i++) {
+            buffer.put((byte) position.chip(Position.WHITE, i));
+        }
+    }
+
+    // Reads a record at buffer's position into "into", which must be empty,
+    // and returns the color to move.  Throws IllegalArgumentException if the
+    // record is not a position the rules allow: too many chips, a color to
+    // move other than 0 or 1, or a chip on a square it may not occupy.  The
+    // buffer must hold the whole record.
+    static int read(ByteBuffer buffer, Position into) {
+        int header = buffer.get() & 255;
+        int mColor = buffer.get();
+        int[] counts = {header & 15, header >> 4};
+        if (counts[Position.BLACK] > Position.CHIPS || counts[Position.WHITE] > Position.CHIPS) {
+            throw new IllegalArgumentException("too many chips: " + counts[Position.BLACK]
+                                               + " black, " + counts[Position.WHITE] + " white");
+        }
+        if (mColor != Position.BLACK && mColor != Position.WHITE) {
+            throw new IllegalArgumentException("no such color to move: " + mColor);
+        }
+        for (int c = Position.BLACK; c <= Position.WHITE; c++) {
+            for (int i = 0; i < counts[c]; i++) {
+                int cell = buffer.get();
+                if (cell < 0 || cell >= Position.CELLS
+                    || !into.isLegal(Position.add(cell), c)) {
+                    throw new IllegalArgumentException("illegal square " + cell
+                                                       + " for chip " + i + " of color " + c);
+                }
+                into.play(Position.add(cell), c);
+            }
+        }
+        return mColor;
+    }
+}
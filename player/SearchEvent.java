@@ -0,0 +1,45 @@
+/* SearchEvent.java */
+
+package player;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *  A Flight Recorder event for one call to MachinePlayer.chooseMove.  It
+ *  costs next to nothing unless a recording has the event enabled.  The
+ *  counts other than nodes and depth are only filled in while the player
+ *  records statistics (MachinePlayer.setStatistics).
+ */
+@Name("network.Search")
+@Label("Network Search")
+@Category("Network")
+@Description("A move chosen by MachinePlayer")
+class SearchEvent extends Event {
+    @Label("Color")
+    int color;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Book Move")
+    boolean book;
+
+    @Label("Cutoffs")
+    long cutoffs;
+
+    @Label("First-Move Cutoff Rate")
+    double firstMoveCutoffRate;
+
+    @Label("Branching Factor")
+    double branchingFactor;
+
+    @Label("Win Checks")
+    long winChecks;
+}
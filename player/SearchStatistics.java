@@ -0,0 +1,197 @@
+/* SearchStatistics.java */
+
+package player;
+
+/**
+ *  What one call to MachinePlayer.chooseMove did: how many positions it
+ *  visited at each ply, how often and how early moves were cut off, how many
+ *  network checks it needed and how many of those the evaluation cache
+ *  answered, and how long it took.  Only
+ *  recorded while MachinePlayer.setStatistics(true) is in effect.
+ */
+public class SearchStatistics {
+    private final long[] nodes;
+    private long cutoffs;
+    private long firstMoveCutoffs;
+    private long expanded;
+    private long searched;
+    private long winChecks;
+    private long cacheHits;
+    private long cacheMisses;
+    private long elapsed;
+    private int depth;
+    private boolean book;
+
+    SearchStatistics() {
+        nodes = new long[MachinePlayer.MAX_DEPTH + 1];
+    }
+
+    SearchStatistics(SearchStatistics other) {
+        this();
+        add(other);
+        elapsed = other.elapsed;
+        depth = other.depth;
+        book = other.book;
+    }
+
+    void reset() {
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = 0;
+        }
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+        expanded = 0;
+        searched = 0;
+        winChecks = 0;
+        cacheHits = 0;
+        cacheMisses = 0;
+        elapsed = 0;
+        depth = 0;
+        book = false;
+    }
+
+    // Adds the counts of a helper's search to these.
+    synchronized void add(SearchStatistics other) {
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] += other.nodes[i];
+        }
+        cutoffs += other.cutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        expanded += other.expanded;
+        searched += other.searched;
+        winChecks += other.winChecks;
+        cacheHits += other.cacheHits;
+        cacheMisses += other.cacheMisses;
+    }
+
+    void node(int ply) {
+        nodes[Math.min(ply, nodes.length - 1)]++;
+    }
+
+    // An interior node searched "moves" of its moves, the last of them
+    // causing a cutoff if "cutoff" is set.
+    void expanded(int moves, boolean cutoff) {
+        expanded++;
+        searched += moves;
+        if (cutoff) {
+            cutoffs++;
+            if (moves == 1) {
+                firstMoveCutoffs++;
+            }
+        }
+    }
+
+    void winCheck() {
+        winChecks++;
+    }
+
+    // A lookup in the evaluation cache found "hits" results and computed
+    // "misses" (both 0 if the chips alone ruled a network out).
+    void cacheLookup(long hits, long misses) {
+        cacheHits += hits;
+        cacheMisses += misses;
+    }
+
+    void finish(long nanos, int depth, boolean book) {
+        elapsed = nanos;
+        this.depth = depth;
+        this.book = book;
+    }
+
+    // Positions visited in all.
+    public long getNodes() {
+        long total = 0;
+        for (long n : nodes) {
+            total += n;
+        }
+        return total;
+    }
+
+    // Positions visited "ply" moves below the root (the root is ply 0).
+    public long getNodes(int ply) {
+        if (ply < 0 || ply >= nodes.length) return 0;
+        return nodes[ply];
+    }
+
+    // Interior positions whose search stopped early because a move was
+    // good enough for a cutoff.
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    // Cutoffs caused by the first move searched.
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    // The share of cutoffs caused by the first move searched, a measure of
+    // how good the move ordering is.
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    // The average number of moves searched per interior position.
+    public double getBranchingFactor() {
+        return expanded == 0 ? 0 : (double) searched / expanded;
+    }
+
+    // Calls to isWinningGrid.
+    public long getWinChecks() {
+        return winChecks;
+    }
+
+    // Network checks the evaluation cache answered without a search.
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    // Network checks the evaluation cache had to search for and store.
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    // The share of cache lookups that were hits.
+    public double getCacheHitRate() {
+        long lookups = cacheHits + cacheMisses;
+        return lookups == 0 ? 0 : (double) cacheHits / lookups;
+    }
+
+    public double getElapsedMillis() {
+        return elapsed / 1e6;
+    }
+
+    // The depth of the deepest search that finished.
+    public int getDepth() {
+        return depth;
+    }
+
+    // True if the move came from the opening book without a search.
+    public boolean isBookMove() {
+        return book;
+    }
+
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("depth %d, %d nodes in %.1f ms", depth, getNodes(),
+                               getElapsedMillis()));
+        if (book) {
+            s.append(" (book move)");
+        }
+        s.append(", per ply:");
+        int last = nodes.length - 1;
+        while (last > 0 && nodes[last] == 0) {
+            last--;
+        }
+        for (int i = 0; i <= last; i++) {
+            s.append(' ').append(nodes[i]);
+        }
+        s.append(String.format(", %d cutoffs (%.0f%% first move), branching %.1f,"
+                               + " %d win checks",
+                               cutoffs, 100 * getFirstMoveCutoffRate(),
+                               getBranchingFactor(), winChecks));
+        if (cacheHits + cacheMisses > 0) {
+            s.append(String.format(" (%.0f%% cache hits)", 100 * getCacheHitRate()));
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,52 @@
+/* SelfPlay.java */
+
+package player;
+
+/**
+ *  Plays MachinePlayer against itself with selective search on one side
+ *  and off on the other, at the same time per move, and prints the result
+ *  and the depth each side reached in the STEP phase.  Each game starts
+ *  from a seeded random position early in the STEP phase, where the search
+ *  has the most moves to look at, in which neither color can complete a
+ *  network in one move.  It is played twice, with the players' colors
+ *  swapped.  The games are refereed by Tournament, on one thread so that
+ *  both sides get the same machine.
+ *
+ *  Usage:  java player.SelfPlay [openings] [millis] [null] [lmr]
+ *
+ *  "null" and "lmr" pick the options the first player searches with; with
+ *  neither, it uses both.
+ */
+public class SelfPlay {
+
+    public static void main(String[] args) {
+        int openings = 10;
+        long millis = 100;
+        boolean nullMove = false;
+        boolean lateReductions = false;
+        if (args.length > 0) {
+            openings = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            millis = Long.parseLong(args[1]);
+        }
+        for (int i = 2; i < args.length; i++) {
+            nullMove |= args[i].equals("null");
+            lateReductions |= args[i].equals("lmr");
+        }
+        if (!nullMove && !lateReductions) {
+            nullMove = true;
+            lateReductions = true;
+        }
+        String selective = "t" + millis;
+        if (nullMove) {
+            selective += ",null";
+        }
+        if (lateReductions) {
+            selective += ",lmr";
+        }
+        Tournament.Engine[] engines = {new Tournament.Engine(selective),
+                                       new Tournament.Engine("t" + millis)};
+        Tournament.run(engines, 2 * openings, 1, -1);
+    }
+}
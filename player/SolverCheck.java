@@ -0,0 +1,105 @@
+/* SolverCheck.java */
+
+package player;
+
+/**
+ *  Checks NetworkSolver against a plain AND/OR search that tries every
+ *  move of both sides, on seeded random positions.  For each position and
+ *  each number of moves up to the limit, both must give the same answer,
+ *  and a proven network's first move must itself win in the moves left.
+ *  Prints each disagreement and exits with status 1 if there was any.
+ *
+ *  Usage:  java player.SolverCheck [positions] [moves]
+ */
+public class SolverCheck {
+    static final int[] PLIES = {9, 11, 13, 16, 20, 24, 30};
+
+    private static int failures;
+
+    // Returns true if attacker, to move, completes a network within "moves"
+    // of its own moves against any defence.
+    static boolean wins(Position position, int attacker, int moves) {
+        if (moves <= 0) return false;
+        int[] list = new int[Position.MAX_MOVES];
+        int count = position.generate(attacker, list);
+        for (int i = 0; i < count; i++) {
+            if (winsWith(position, attacker, list[i], moves)) return true;
+        }
+        return false;
+    }
+
+    // Returns true if attacker, to move, completes a network within "moves"
+    // of its own moves, the first of them m.
+    static boolean winsWith(Position position, int attacker, int m, int moves) {
+        position.make(m, attacker);
+        int winner = position.winner(attacker);
+        boolean won = winner == attacker || (winner < 0 && holds(position, attacker, moves - 1));
+        position.undo(m, attacker);
+        return won;
+    }
+
+    // Returns true if, whatever the defender (to move) plays, attacker then
+    // completes a network within "moves" of its own moves.
+    static boolean holds(Position position, int attacker, int moves) {
+        if (moves <= 0) return false;
+        int defender = 1 - attacker;
+        int[] list = new int[Position.MAX_MOVES];
+        int count = position.generate(defender, list);
+        for (int i = 0; i < count; i++) {
+            position.make(list[i], defender);
+            int winner = position.winner(defender);
+            boolean held = winner == attacker
+                || (winner < 0 && wins(position, attacker, moves));
+            position.undo(list[i], defender);
+            if (!held) return false;
+        }
+        return true;
+    }
+
+    public static void main(String[] args) {
+        int positions = 50;
+        int limit = 3;
+        if (args.length > 0) {
+            positions = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            limit = Integer.parseInt(args[1]);
+        }
+        int[] proven = new int[limit + 1];
+        int checked = 0;
+        for (long seed = 1; checked < positions; seed++) {
+            int plies = PLIES[(int) (seed % PLIES.length)];
+            Position position = NodeCounter.randomPosition(seed, plies);
+            if (position == null) continue;
+            checked++;
+            int attacker = plies % 2 == 0 ? MachinePlayer.WHITE : MachinePlayer.BLACK;
+            for (int moves = 1; moves <= limit; moves++) {
+                NetworkSolver solver = new NetworkSolver(position, attacker);
+                boolean solved = solver.solve(moves) == NetworkSolver.PROVEN;
+                boolean expected = wins(new Position(position), attacker, moves);
+                if (solved != expected) {
+                    failures++;
+                    System.out.println("seed " + seed + ", " + moves + " moves: solver says "
+                                       + solved + ", expected " + expected);
+                } else if (solved && (solver.move() == 0
+                                      || !winsWith(new Position(position), attacker,
+                                                   solver.move(), moves))) {
+                    failures++;
+                    System.out.println("seed " + seed + ", " + moves + " moves: "
+                                       + Position.unpack(solver.move()) + " does not win");
+                }
+                if (solved) {
+                    proven[moves]++;
+                }
+            }
+        }
+        StringBuilder s = new StringBuilder(checked + " positions, proven in");
+        for (int moves = 1; moves <= limit; moves++) {
+            s.append(moves == 1 ? " " : ", ").append(moves).append(": ").append(proven[moves]);
+        }
+        System.out.println(s + "; " + failures + " disagreements");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
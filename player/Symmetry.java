@@ -0,0 +1,123 @@
+/* Symmetry.java */
+
+package player;
+
+/**
+ *  The eight symmetries of the board, precomputed once when the class is
+ *  loaded, for sharing cached results between positions that are images of
+ *  one another.
+ *
+ *  Symmetry s first transposes the board (x and y trade places) if bit 2 is
+ *  set, then mirrors it left to right (x becomes 7 - x) if bit 0 is set and
+ *  top to bottom (y becomes 7 - y) if bit 1 is set.  Mirroring keeps every
+ *  goal area where it is, so symmetries 0-3 keep each chip's color.
+ *  Transposing turns black's goals into white's, so symmetries 4-7 also
+ *  swap the colors of the chips and of the side to move: the image of a
+ *  position is then the same game with the players' roles exchanged.
+ *
+ *  Legality and networks are the same in every image.  So is the evaluation
+ *  up to the insertion order of chips on a line, which can reweight a
+ *  connection by a sixteenth of an edge either way; the transposition table
+ *  already merges positions that differ only in that order.
+ *
+ *  A position's canonical form is its image with the smallest key; see
+ *  Position.symmetry().
+ */
+class Symmetry {
+    static final int SIDE = Position.SIDE;
+    static final int CELLS = Position.CELLS;
+    static final int COUNT = 8;
+    static final int MIRROR_X = 1;
+    static final int MIRROR_Y = 2;
+    static final int TRANSPOSE = 4;
+
+    // CELL[s][cell] is the image of cell under symmetry s, and INVERSE[s]
+    // the symmetry that undoes s.
+    static final int[][] CELL = new int[COUNT][CELLS];
+    static final int[] INVERSE = new int[COUNT];
+
+    // KEYS[s][c][cell] is the Zobrist key, in image s, of a chip of color c
+    // on cell: Position.ZOBRIST of its image square and color.
+    static final long[][][] KEYS = new long[COUNT][2][CELLS];
+
+    static {
+        for (int s = 0; s < COUNT; s++) {
+            for (int c = 0; c < CELLS; c++) {
+                int x = Position.x(c);
+                int y = Position.y(c);
+                if ((s & TRANSPOSE) != 0) {
+                    int t = x;
+                    x = y;
+                    y = t;
+                }
+                if ((s & MIRROR_X) != 0) {
+                    x = SIDE - 1 - x;
+                }
+                if ((s & MIRROR_Y) != 0) {
+                    y = SIDE - 1 - y;
+                }
+                CELL[s][c] = Position.cell(x, y);
+                for (int mColor = 0; mColor < 2; mColor++) {
+                    KEYS[s][mColor][c] = Position.ZOBRIST[color(s, mColor)][CELL[s][c]];
+                }
+            }
+        }
+        for (int s = 0; s < COUNT; s++) {
+            for (int t = 0; t < COUNT; t++) {
+                int c = 0;
+                while (c < CELLS && CELL[t][CELL[s][c]] == c) {
+                    c++;
+                }
+                if (c == CELLS) {
+                    INVERSE[s] = t;
+                }
+            }
+        }
+    }
+
+    // Returns true if symmetry s swaps the colors.
+    static boolean swaps(int s) {
+        return (s & TRANSPOSE) != 0;
+    }
+
+    // The color that mColor's chips have in image s.
+    static int color(int s, int mColor) {
+        return swaps(s) ? 1 - mColor : mColor;
+    }
+
+    // The image of a packed move (0 stays 0).
+    static int move(int s, int move) {
+        if (move == 0) return 0;
+        int to = CELL[s][Position.to(move)];
+        if (Position.kind(move) == Move.STEP) {
+            return Position.step(CELL[s][Position.from(move)], to);
+        }
+        return Position.add(to);
+    }
+
+    // The image of a bitboard.
+    static long bits(int s, long bits) {
+        if ((s & TRANSPOSE) != 0) {
+            bits = transpose(bits);
+        }
+        if ((s & MIRROR_X) != 0) {
+            bits = Long.reverse(Long.reverseBytes(bits));
+        }
+        if ((s & MIRROR_Y) != 0) {
+            bits = Long.reverseBytes(bits);
+        }
+        return bits;
+    }
+
+    // Swaps bit x + 8 * y with bit y + 8 * x, a block at a time: 4x4 blocks,
+    // then 2x2 blocks within them, then single squares.
+    static long transpose(long bits) {
+        long t = 0x0F0F0F0F00000000L & (bits ^ (bits << 28));
+        bits ^= t ^ (t >>> 28);
+        t = 0x3333000033330000L & (bits ^ (bits << 14));
+        bits ^= t ^ (t >>> 14);
+        t = 0x5500550055005500L & (bits ^ (bits << 7));
+        bits ^= t ^ (t >>> 7);
+        return bits;
+    }
+}
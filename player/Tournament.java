@@ -0,0 +1,323 @@
+/* Tournament.java */
+
+package player;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *  A headless referee that plays MachinePlayer against MachinePlayer, many
+ *  games at once, and reports throughput and results.
+ *
+ *  Every game starts from a seeded random opening and is played twice, with
+ *  the engines' colors swapped.  Each move goes through the Player interface
+ *  both ways: chooseMove on the side to move, then opponentMove on the other
+ *  side, which must accept it.  The referee keeps its own board as well, and
+ *  a move either the referee or the opponent rejects loses the game.
+ *
+ *  Usage:  java player.Tournament [games] [engine A] [engine B] [threads] [start] [log]
+ *
+ *  An engine is a comma-separated list of settings: "d4" searches to depth
+ *  4, "t100" for 100 ms per move, "null" and "lmr" turn on null-move pruning
+ *  and late move reductions, "nopvs", "noorder", "nohash", "nocache" and
+ *  "nosym" turn off principal variation search, move ordering, the
+ *  transposition table, the evaluation cache and the sharing of table
+ *  entries between symmetric positions, and "mcts" plays by Monte Carlo tree
+ *  search instead (for the time per move, or MachinePlayer.PLAYOUTS
+ *  playouts without one).  The default engine is "d3".  Threads default
+ *  to the number of cores.  Start is the number of random plies before the
+ *  engines take over (default 4), or "step" for quiet positions early in
+ *  the STEP phase.
+ *  Every game is written to the log file, if one is named (see GameWriter).
+ */
+public class Tournament {
+    static final int MAX_PLIES = 200;
+    static final int ADD = 0;
+    static final int STEP = 1;
+
+    /**
+     *  The settings of one engine.
+     */
+    static class Engine {
+        final String spec;
+        int depth = 3;
+        long millis = 0;
+        boolean nullMove = false;
+        boolean lateReductions = false;
+        boolean monteCarlo = false;
+        boolean pvs = true;
+        boolean ordering = true;
+        boolean hash = true;
+        boolean cache = true;
+        boolean symmetries = true;
+
+        Engine(String spec) {
+            this.spec = spec;
+            for (String s : spec.split(",")) {
+                if (s.isEmpty()) continue;
+                if (s.startsWith("d")) {
+                    depth = Integer.parseInt(s.substring(1));
+                } else if (s.startsWith("t")) {
+                    millis = Long.parseLong(s.substring(1));
+                } else if (s.equals("null")) {
+                    nullMove = true;
+                } else if (s.equals("lmr")) {
+                    lateReductions = true;
+                } else if (s.equals("mcts")) {
+                    monteCarlo = true;
+                } else if (s.equals("nopvs")) {
+                    pvs = false;
+                } else if (s.equals("noorder")) {
+                    ordering = false;
+                } else if (s.equals("nohash")) {
+                    hash = false;
+                } else if (s.equals("nocache")) {
+                    cache = false;
+                } else if (s.equals("nosym")) {
+                    symmetries = false;
+                } else {
+                    throw new IllegalArgumentException("unknown engine setting " + s);
+                }
+            }
+        }
+
+        MachinePlayer player(int color, Position start) {
+            MachinePlayer player = new MachinePlayer(color, depth, start);
+            player.setTimeLimit(millis);
+            player.setNullMove(nullMove);
+            player.setLateMoveReductions(lateReductions);
+            player.setMonteCarlo(monteCarlo);
+            player.setPrincipalVariation(pvs);
+            player.setMoveOrdering(ordering);
+            player.setSymmetries(symmetries);
+            if (!hash) {
+                player.setHashSize(0);
+            }
+            if (!cache) {
+                player.setEvaluationCache(0);
+            }
+            return player;
+        }
+    }
+
+    /**
+     *  What one engine did over one game or the whole tournament.  Indexed
+     *  by phase (ADD or STEP) where it matters.
+     */
+    static class Totals {
+        int wins;
+        int forfeits;
+        final long[] moves = new long[2];
+        final long[] nanos = new long[2];
+        final long[] nodes = new long[2];
+        long depths;
+
+        synchronized void add(Totals game) {
+            wins += game.wins;
+            forfeits += game.forfeits;
+            for (int p = ADD; p <= STEP; p++) {
+                moves[p] += game.moves[p];
+                nanos[p] += game.nanos[p];
+                nodes[p] += game.nodes[p];
+            }
+            depths += game.depths;
+        }
+
+        synchronized long nodes() {
+            return nodes[ADD] + nodes[STEP];
+        }
+
+        synchronized String describe() {
+            return String.format("ADD %.1f ms/move, STEP %.1f ms/move, %.0f nodes/s,"
+                                 + " %.2f average STEP depth, %d forfeits",
+                                 nanos[ADD] / 1e6 / Math.max(1, moves[ADD]),
+                                 nanos[STEP] / 1e6 / Math.max(1, moves[STEP]),
+                                 (nodes[ADD] + nodes[STEP]) * 1e9
+                                 / Math.max(1, nanos[ADD] + nanos[STEP]),
+                                 (double) depths / Math.max(1, moves[STEP]), forfeits);
+        }
+    }
+
+    // Plays one game from start, with mColor to move and engines[whiteSide]
+    // playing white, adding what each engine did to totals and each legal
+    // move to record (unless it is null).  Returns the index of the winning
+    // engine, or -1 if MAX_PLIES pass without one.
+    static int play(Engine[] engines, int whiteSide, Position start, int mColor,
+                    Totals[] totals, GameRecord record) {
+        Position referee = new Position(start);
+        int[] sides = new int[2];
+        sides[MachinePlayer.WHITE] = whiteSide;
+        sides[MachinePlayer.BLACK] = 1 - whiteSide;
+        MachinePlayer[] players = new MachinePlayer[2];
+        for (int c = 0; c < 2; c++) {
+            players[c] = engines[sides[c]].player(c, start);
+        }
+        for (int ply = 0; ply < MAX_PLIES; ply++) {
+            Totals mine = totals[sides[mColor]];
+            int phase = referee.count(mColor) < Position.CHIPS ? ADD : STEP;
+            long started = System.nanoTime();
+            Move m = players[mColor].chooseMove();
+            mine.nanos[phase] += System.nanoTime() - started;
+            mine.moves[phase]++;
+            mine.nodes[phase] += players[mColor].getNodeCount();
+            if (phase == STEP) {
+                mine.depths += players[mColor].getDepth();
+            }
+            if (m == null || !referee.isLegal(m, mColor)
+                || !players[1 - mColor].opponentMove(m)) {
+                mine.forfeits++;
+                totals[sides[1 - mColor]].wins++;
+                return sides[1 - mColor];
+            }
+            referee.play(m, mColor);
+            if (record != null) {
+                record.add(m);
+            }
+            int winner = referee.winner(mColor);
+            if (winner >= 0) {
+                totals[sides[winner]].wins++;
+                return sides[winner];
+            }
+            mColor = 1 - mColor;
+        }
+        return -1;
+    }
+
+    // Returns true if neither color can complete a network in one move.
+    static boolean quiet(Position position) {
+        for (int mColor = 0; mColor < 2; mColor++) {
+            if (new NetworkSolver(position, mColor).solve(1) == NetworkSolver.PROVEN) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns the openings for the given number of games: random positions
+    // "plies" plies in, or quiet STEP-phase ones if plies is negative.
+    static List<Position> openings(int count, int plies) {
+        boolean step = plies < 0;
+        if (step) {
+            plies = 2 * Position.CHIPS;
+        }
+        List<Position> openings = new ArrayList<Position>();
+        for (long seed = 1; openings.size() < count; seed++) {
+            Position start = NodeCounter.randomPosition(seed, plies);
+            if (start != null && (!step || quiet(start))) {
+                openings.add(start);
+            }
+        }
+        return openings;
+    }
+
+    // Plays games / 2 openings twice each on the given number of threads and
+    // prints the report.  Returns the totals of the two engines.
+    static Totals[] run(Engine[] engines, int games, int threads, int plies) {
+        return run(engines, games, threads, plies, null);
+    }
+
+    // As above, also writing every game to log unless it is null.
+    static Totals[] run(final Engine[] engines, int games, int threads, int plies,
+                        final GameWriter log) {
+        final Totals[] totals = {new Totals(), new Totals()};
+        final int mColor = (plies < 0 || plies % 2 == 0) ? MachinePlayer.WHITE
+                                                         : MachinePlayer.BLACK;
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (final Position start : openings((games + 1) / 2, plies)) {
+            for (int w = 0; w < 2; w++) {
+                final int whiteSide = w;
+                tasks.add(new Callable<Integer>() {
+                    public Integer call() throws IOException {
+                        Totals[] game = {new Totals(), new Totals()};
+                        GameRecord record = log == null ? null : new GameRecord(start, mColor);
+                        int winner = play(engines, whiteSide, start, mColor, game, record);
+                        if (log != null) {
+                            log.write(record);
+                        }
+                        totals[0].add(game[0]);
+                        totals[1].add(game[1]);
+                        return winner;
+                    }
+                });
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long started = System.nanoTime();
+        int draws = 0;
+        // Score of engine A: 1 per win, 1/2 per draw, and its square.
+        double sum = 0;
+        double squares = 0;
+        try {
+            for (Future<Integer> result : pool.invokeAll(tasks)) {
+                int winner = result.get();
+                double x = winner < 0 ? 0.5 : (winner == 0 ? 1 : 0);
+                if (winner < 0) {
+                    draws++;
+                }
+                sum += x;
+                squares += x * x;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return totals;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        int n = tasks.size();
+        double score = sum / n;
+        double error = 1.96 * Math.sqrt(Math.max(0, squares / n - score * score) / n);
+        System.out.println("A: " + engines[0].spec + "   B: " + engines[1].spec);
+        System.out.println(String.format("%d games in %.1f s on %d threads: %.2f games/s,"
+                                         + " %.0f nodes/s",
+                                         n, seconds, threads, n / seconds,
+                                         (totals[0].nodes() + totals[1].nodes()) / seconds));
+        System.out.println("A: " + totals[0].describe());
+        System.out.println("B: " + totals[1].describe());
+        System.out.println("A wins " + totals[0].wins + ", B wins " + totals[1].wins
+                           + ", draws " + draws);
+        System.out.println(String.format("A scores %.1f%% +/- %.1f%% (95%% confidence)",
+                                         100 * score, 100 * error));
+        return totals;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int games = 100;
+        String a = "d3";
+        String b = "d3";
+        int threads = Runtime.getRuntime().availableProcessors();
+        int plies = 4;
+        if (args.length > 0) {
+            games = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            a = args[1];
+        }
+        if (args.length > 2) {
+            b = args[2];
+        }
+        if (args.length > 3) {
+            threads = Integer.parseInt(args[3]);
+        }
+        if (args.length > 4) {
+            plies = args[4].equals("step") ? -1 : Integer.parseInt(args[4]);
+        }
+        Engine[] engines = {new Engine(a), new Engine(b)};
+        if (args.length > 5) {
+            try (GameWriter log = GameWriter.create(Paths.get(args[5]))) {
+                run(engines, games, threads, plies, log);
+            }
+        } else {
+            run(engines, games, threads, plies);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/* TranspositionTable.java */
+
+package player;
+
+import java.util.Arrays;
+
+/**
+ *  A fixed-size hash table of search results, indexed by Zobrist key.  Each
+ *  slot holds two entries: the first is only replaced by a search at least as
+ *  deep (or by any search once the entry is left over from an earlier move),
+ *  the second is always replaced.  Scores are stored relative to the ply they
+ *  were found at, so a position reached at a different ply can reuse them.
+ *  A search may also look positions up by the key of their canonical image
+ *  (see Symmetry), so that one entry serves every image; the entry's move
+ *  and score are then those of the image.
+ *
+ *  The table may be shared by several search threads without locking.  Each
+ *  entry's key is stored XORed with its contents, so an entry torn by two
+ *  concurrent writers no longer matches any key and simply reads as a miss.
+ */
+class TranspositionTable {
+    static final int EXACT = 0;
+    static final int LOWER = 1;
+    static final int UPPER = 2;
+
+    /**
+     *  The contents of one entry, filled in by probe().
+     */
+    static class Entry {
+        double score;
+        int move;
+        int depth;
+        int flag;
+    }
+
+    // Layout of data[]: bits 0-13 move, 14-21 depth, 22-23 flag, 24-31 age.
+    private final long[] keys;
+    private final long[] data;
+    private final double[] scores;
+    private final int mask;
+    private volatile int age;
+
+    // Creates a table holding at most "entries" results (rounded down to a
+    // power of two, and at least two).
+    TranspositionTable(int entries) {
+        int size = Integer.highestOneBit(Math.max(2, entries));
+        keys = new long[size];
+        data = new long[size];
+        scores = new double[size];
+        mask = size / 2 - 1;
+        age = 1;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    // Marks every entry stored so far as belonging to an older search.
+    void newSearch() {
+        age = age % 255 + 1;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+        Arrays.fill(scores, 0);
+    }
+
+    // Looks up key.  On a hit copies the entry into "into" and returns true.
+    boolean probe(long key, Entry into) {
+        int slot = ((int) key & mask) << 1;
+        for (int i = slot; i < slot + 2; i++) {
+            long d = data[i];
+            double score = scores[i];
+            if (d != 0 && (keys[i] ^ d ^ Double.doubleToRawLongBits(score)) == key) {
+                into.score = score;
+                into.move = (int) (d & 0x3FFF);
+                into.depth = (int) ((d >>> 14) & 255);
+                into.flag = (int) ((d >>> 22) & 3);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // As probe(key, into), where key is that of the image under symmetry s
+    // of the position looked up.  The move is mapped back from the image,
+    // and if s swaps the colors, the score (stored for the image, where this
+    // player's chips have the other color) is negated and its bound turned
+    // round.
+    boolean probe(long key, int s, Entry into) {
+        if (!probe(key, into)) {
+            return false;
+        }
+        into.move = Symmetry.move(Symmetry.INVERSE[s], into.move);
+        if (Symmetry.swaps(s)) {
+            into.score = -into.score;
+            into.flag = turn(into.flag);
+        }
+        return true;
+    }
+
+    // As store(), for the image under symmetry s of the position searched;
+    // see probe(long, int, Entry).
+    void store(long key, int s, int depth, int flag, double score, int move) {
+        if (Symmetry.swaps(s)) {
+            score = -score;
+            flag = turn(flag);
+        }
+        store(key, depth, flag, score, Symmetry.move(s, move));
+    }
+
+    private static int turn(int flag) {
+        return flag == LOWER ? UPPER : (flag == UPPER ? LOWER : flag);
+    }
+
+    void store(long key, int depth, int flag, double score, int move) {
+        int slot = ((int) key & mask) << 1;
+        int entry = slot + 1;
+        long first = data[slot];
+        boolean same = (keys[slot] ^ first ^ Double.doubleToRawLongBits(scores[slot])) == key;
+        if (first == 0 || same || ((first >>> 24) & 255) != age
+            || ((first >>> 14) & 255) <= depth) {
+            entry = slot;
+        }
+        long old = data[entry];
+        if (move == 0 && old != 0
+            && (keys[entry] ^ old ^ Double.doubleToRawLongBits(scores[entry])) == key) {
+            move = (int) (old & 0x3FFF);
+        }
+        long d = (move & 0x3FFF) | ((long) (depth & 255) << 14)
+            | ((long) flag << 22) | ((long) age << 24);
+        data[entry] = d;
+        scores[entry] = score;
+        keys[entry] = key ^ d ^ Double.doubleToRawLongBits(score);
+    }
+}